@@ -0,0 +1,120 @@
+package bgu.spl.mics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the message bus with several producers, the benchmark threads, and
+ * {@code consumers} micro-services that take the messages with
+ * {@link MessageBus#awaitMessage(MicroService)} on their own threads. Mailboxes are
+ * bounded and block their senders, so the producers run at the speed of the consumers.
+ * Change the number of producers with {@code -t}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class BusBenchmark {
+    @Param({"1", "4"})
+    public int consumers;
+
+    @Param({"1024"})
+    public int mailboxCapacity;
+
+    private final MessageBusImpl bus = MessageBusImpl.getInstance();
+    private final List<Thread> threads = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void start() throws InterruptedException {
+        MessageBusControl.getInstance().configureMailbox(null, mailboxCapacity, MailboxPolicy.BLOCK);
+        for (int i = 0; i < consumers; i++) {
+            Consumer consumer = new Consumer("consumer-" + i);
+            Thread thread = new Thread(consumer, consumer.getName());
+            thread.start();
+            consumer.awaitInitialized();
+            threads.add(thread);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws InterruptedException {
+        bus.sendBroadcast(new Stop());
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        threads.clear();
+        MessageBusControl.getInstance().configureMailbox(null, Mailbox.UNBOUNDED, MailboxPolicy.BLOCK);
+    }
+
+    /**
+     * Routes an event round-robin to a consumer without waiting for its result.
+     */
+    @Benchmark
+    public Future<Integer> sendEvent() {
+        return bus.sendEvent(new Work(1));
+    }
+
+    /**
+     * Delivers a broadcast to every consumer.
+     */
+    @Benchmark
+    public void sendBroadcast() {
+        bus.sendBroadcast(new Tick());
+    }
+
+    /**
+     * Sends an event and waits for a consumer to complete it.
+     */
+    @Benchmark
+    public Integer sendEventAndGet() {
+        return bus.sendEvent(new Work(1)).get();
+    }
+
+    private static final class Work implements Event<Integer> {
+        private final int value;
+
+        private Work(int value) {
+            this.value = value;
+        }
+    }
+
+    private static final class Tick implements Broadcast {
+    }
+
+    private static final class Stop implements Broadcast {
+    }
+
+    private static final class Consumer extends MicroService {
+        private long ticks;
+
+        private Consumer(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeEvent(Work.class, work -> complete(work, work.value));
+            subscribeBroadcast(Tick.class, tick -> ticks++);
+            subscribeBroadcast(Stop.class, stop -> terminate());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package bgu.spl.mics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of resolving a {@link Future} and reading its result on one thread. Waiting for a
+ * result resolved by another thread is measured by {@link BusBenchmark#sendEventAndGet()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FutureBenchmark {
+    private final Integer value = 42;
+    private Future<Integer> resolved;
+
+    @Setup
+    public void setUp() {
+        resolved = new Future<>();
+        resolved.resolve(value);
+    }
+
+    @Benchmark
+    public Integer resolveThenGet() {
+        Future<Integer> future = new Future<>();
+        future.resolve(value);
+        return future.get();
+    }
+
+    @Benchmark
+    public Integer getResolved() {
+        return resolved.get();
+    }
+
+    @Benchmark
+    public Integer getResolvedWithTimeout() {
+        return resolved.get(1, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void onCompleteThenResolve(Blackhole blackhole) {
+        Future<Integer> future = new Future<>();
+        future.onComplete(blackhole::consume);
+        future.resolve(value);
+    }
+}
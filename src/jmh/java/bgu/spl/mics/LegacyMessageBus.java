@@ -0,0 +1,156 @@
+package bgu.spl.mics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A copy of {@link MessageBusImpl} as it was before messages were routed through
+ * per-type subscriber snapshots, kept only so that {@link RoutingBenchmark} can compare
+ * the two. Senders take the global {@code synchronized (messages)} monitor, and every
+ * event rotates a {@link CopyOnWriteArrayList} with {@code remove(0)} and {@code add}.
+ * <p>
+ * Unlike the original, complete() removes the event's Future, so that the Futures the
+ * original kept forever do not slow the benchmark down as it runs. It is not a
+ * singleton, and services are registered with it directly rather than through
+ * {@link MicroService#run()}.
+ */
+final class LegacyMessageBus implements MessageBus {
+	private final ConcurrentHashMap <Class<?extends Message>, List<MicroService>> messages ;
+	private final ConcurrentHashMap <MicroService, BlockingQueue<Message>> queues ;
+	private final ConcurrentHashMap<Event<?>, Future<?>> futureEvents;
+	// Placed in a service's queue by unregister to wake a thread blocked in awaitMessage
+	private static final Message UNREGISTERED = new Message() { };
+	LegacyMessageBus() {
+		messages = new ConcurrentHashMap<>();
+		queues = new ConcurrentHashMap<>();
+		futureEvents = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public <T> void subscribeEvent(Class<? extends Event<T>> type, MicroService m) {
+		synchronized (messages) {
+			if (!messages.containsKey(type)) {
+				messages.put(type, new CopyOnWriteArrayList<>());
+			}
+			messages.get(type).add(m);
+		}
+	}
+
+	@Override
+	public void subscribeBroadcast(Class<? extends Broadcast> type, MicroService m) {
+		synchronized (messages) {
+			if (!messages.containsKey(type)) {
+				messages.put(type, new CopyOnWriteArrayList<>());
+			}
+			messages.get(type).add(m);
+		}
+
+	}
+
+	@Override
+	public <T> void complete(Event<T> e, T result) {
+		@SuppressWarnings("unchecked")
+		Future<T> future = (Future<T>) futureEvents.remove(e);
+		if (future != null) {
+			future.resolve(result);
+		}
+	}
+
+
+	@Override
+	public void sendBroadcast(Broadcast b) {
+		List<MicroService> subscribers;
+		synchronized (messages) {
+			subscribers = messages.get(b.getClass());
+		}
+		if (subscribers != null) {
+			for (int i = 0; i < subscribers.size(); i++) {
+				MicroService m = subscribers.get(i);
+				queues.putIfAbsent(m, new LinkedBlockingQueue<>());
+				try {
+					queues.get(m).put(b);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	@Override
+	public <T> Future<T> sendEvent(Event<T> e) {
+		List<MicroService> subscribers;
+		synchronized (messages) {
+			subscribers = messages.get(e.getClass());
+		}
+		if (subscribers == null || subscribers.isEmpty()) {
+			return null;
+		}
+
+		Future<T> future = new Future<>();
+		futureEvents.put(e, future); // Associate the event with the Future
+
+		synchronized (messages) {
+			List<MicroService> eventSubscribers = messages.get(e.getClass());
+			if (eventSubscribers != null && !eventSubscribers.isEmpty()) {
+				MicroService target = eventSubscribers.remove(0);
+				eventSubscribers.add(target); // Rotate for round-robin
+				queues.putIfAbsent(target, new LinkedBlockingQueue<>());
+				try {
+					queues.get(target).add(e); // Use add instead of put
+				} catch (IllegalStateException ex) {
+					System.err.println("Queue full: " + ex.getMessage());
+				}
+			}
+		}
+
+		return future;
+	}
+
+	@Override
+	public void register(MicroService m) {
+		synchronized (queues) {
+			if (!queues.containsKey(m)) {
+				queues.put(m, new LinkedBlockingQueue<>());
+			}
+		}
+	}
+
+
+	@Override
+	public void unregister(MicroService m) {
+		synchronized (messages) {
+			List<Class<? extends Message>> keys = new ArrayList<>(messages.keySet());
+			for (int i = 0; i < keys.size(); i++) {
+				List<MicroService> subscribers = messages.get(keys.get(i));
+				if (subscribers != null) {
+					subscribers.remove(m);
+				}
+			}
+		}
+		BlockingQueue<Message> queue = queues.remove(m);
+		if (queue != null) {
+			queue.clear();
+			queue.offer(UNREGISTERED); // Wake up the service if it is blocked on its queue
+		}
+	}
+
+
+	@Override
+	public Message awaitMessage(MicroService m) throws InterruptedException {
+		BlockingQueue<Message> queue = queues.get(m);
+		if (queue == null) {
+			throw new IllegalStateException("MicroService is not registered");
+		}
+
+		Message message = queue.take(); // Blocks until a message is available
+		if (message == UNREGISTERED) {
+			queue.offer(UNREGISTERED); // Keep the queue poisoned for any other waiter
+			throw new IllegalStateException("MicroService was unregistered while waiting");
+		}
+		return message;
+	}
+
+}
@@ -0,0 +1,137 @@
+package bgu.spl.mics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-robin event routing with several producers, the benchmark threads, on the
+ * {@link MessageBusImpl} and on the {@link LegacyMessageBus} it replaced. Each of
+ * {@code consumers} services is registered with the bus directly and drained by a
+ * thread of its own, which completes every event it takes. Each producer waits for the
+ * event it sent {@code window} events earlier, so mailboxes stay bounded on both buses.
+ * Change the number of producers with {@code -t}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RoutingBenchmark {
+    @Param({"snapshot", "locked"})
+    public String routing;
+
+    @Param({"1", "4", "16"})
+    public int consumers;
+
+    @Param({"256"})
+    public int window;
+
+    private MessageBus bus;
+    private final List<Consumer> started = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void start() {
+        bus = routing.equals("snapshot") ? MessageBusImpl.getInstance() : new LegacyMessageBus();
+        for (int i = 0; i < consumers; i++) {
+            Consumer consumer = new Consumer("consumer-" + i, bus);
+            bus.register(consumer);
+            bus.subscribeEvent(Work.class, consumer);
+            consumer.thread.start();
+            started.add(consumer);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws InterruptedException {
+        for (Consumer consumer : started) {
+            bus.unregister(consumer); // Wakes it up with an IllegalStateException
+            consumer.thread.join();
+        }
+        started.clear();
+    }
+
+    /**
+     * The events a producer has sent and not yet waited for.
+     */
+    @State(Scope.Thread)
+    public static class Window {
+        private Future<?>[] futures;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void allocate(RoutingBenchmark benchmark) {
+            futures = new Future<?>[benchmark.window];
+        }
+
+        @TearDown(Level.Iteration)
+        public void drain() {
+            for (int i = 0; i < futures.length; i++) {
+                if (futures[i] != null) {
+                    futures[i].get();
+                    futures[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Routes an event to the next consumer in turn.
+     */
+    @Benchmark
+    public Object sendEvent(Window window) {
+        Future<?> oldest = window.futures[window.next];
+        Object result = oldest == null ? null : oldest.get();
+        window.futures[window.next] = bus.sendEvent(new Work(1));
+        window.next = (window.next + 1) % window.futures.length;
+        return result;
+    }
+
+    private static final class Work implements Event<Integer> {
+        private final int value;
+
+        private Work(int value) {
+            this.value = value;
+        }
+    }
+
+    // Never run as a micro-service, its thread takes its messages from the bus directly
+    private static final class Consumer extends MicroService {
+        private final Thread thread;
+
+        private Consumer(String name, MessageBus bus) {
+            super(name);
+            thread = new Thread(() -> {
+                try {
+                    while (true) {
+                        Work work = (Work) bus.awaitMessage(this);
+                        bus.complete(work, work.value);
+                    }
+                } catch (IllegalStateException | InterruptedException e) {
+                    // Unregistered
+                }
+            }, name);
+        }
+
+        @Override
+        protected void initialize() {
+        }
+    }
+}
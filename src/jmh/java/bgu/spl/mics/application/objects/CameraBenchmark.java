@@ -0,0 +1,62 @@
+package bgu.spl.mics.application.objects;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link Camera#getDetectedObjectsAtTick(int)} per tick, with ticks going up
+ * through a recording of {@code detections} frames and starting over at the end.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CameraBenchmark {
+    @Param({"1000", "100000"})
+    public int detections;
+
+    @Param({"0", "3"})
+    public int frequency;
+
+    @Param({"4"})
+    public int objectsPerFrame;
+
+    private Camera camera;
+    private int lastTick;
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        List<StampedDetectedObjects> frames = new ArrayList<>(detections);
+        for (int time = 1; time <= detections; time++) {
+            List<DetectedObject> objects = new ArrayList<>(objectsPerFrame);
+            for (int i = 0; i < objectsPerFrame; i++) {
+                objects.add(new DetectedObject("Object_" + i, "Object"));
+            }
+            frames.add(new StampedDetectedObjects(time, objects));
+        }
+        camera = new Camera(1, frequency, frames);
+        lastTick = detections + frequency;
+    }
+
+    @Benchmark
+    public List<StampedDetectedObjects> nextTick() {
+        tick = tick == lastTick ? 1 : tick + 1;
+        return camera.getDetectedObjectsAtTick(tick);
+    }
+}
@@ -0,0 +1,71 @@
+package bgu.spl.mics.application.objects;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storing {@code points} cloud points in each {@link CloudPointStorage.Kind} against an
+ * object per point with boxed coordinates. Run with {@code -prof gc} and divide
+ * {@code gc.alloc.rate.norm} by {@code points} for the heap bytes per point; the direct
+ * kinds allocate their coordinates outside the heap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloudPointStorageBenchmark {
+    @Param({"4096"})
+    public int points;
+
+    // Only columns() depends on it, so objectPerPoint() runs once
+    @State(Scope.Thread)
+    public static class Storage {
+        @Param({"HEAP_DOUBLE", "HEAP_FLOAT", "DIRECT_FLOAT"})
+        public CloudPointStorage.Kind kind;
+    }
+
+    @Benchmark
+    public CloudPointStorage columns(Storage storageKind) {
+        CloudPointStorage storage = CloudPointStorage.allocate(storageKind.kind, points);
+        for (int i = 0; i < points; i++) {
+            storage.set(i, i, -i, 0.104);
+        }
+        return storage;
+    }
+
+    @Benchmark
+    public List<BoxedPoint> objectPerPoint() {
+        List<BoxedPoint> result = new ArrayList<>();
+        for (int i = 0; i < points; i++) {
+            result.add(new BoxedPoint(i, -i, 0.104));
+        }
+        return result;
+    }
+
+    // The layout the columns replace
+    public static final class BoxedPoint {
+        private final Double x;
+        private final Double y;
+        private final Double z;
+
+        private BoxedPoint(double x, double y, double z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package bgu.spl.mics.application.objects;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of fusing a tracked object into a map of {@code landmarks} landmarks, and of
+ * finding the landmarks near a position, as the map grows. Landmarks are laid out on
+ * a square with one every two meters, and every update observes an existing one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FusionSlamBenchmark {
+    private static final int OBSERVATIONS = 1024;
+    private static final double SPACING = 2.0;
+
+    @Param({"1000", "10000", "100000"})
+    public int landmarks;
+
+    @Param({"8"})
+    public int pointsPerObject;
+
+    private FusionSlam fusionSlam;
+    private TrackedObject[] observations;
+    private Pose[] poses;
+    private double[] queryX;
+    private double[] queryY;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        fusionSlam = new FusionSlam(FusionSlam.DEFAULT_CELL_SIZE);
+        int side = (int) Math.ceil(Math.sqrt(landmarks));
+        double[] x = new double[pointsPerObject];
+        double[] y = new double[pointsPerObject];
+        for (int i = 0; i < landmarks; i++) {
+            for (int point = 0; point < pointsPerObject; point++) {
+                x[point] = (i % side) * SPACING + point * 0.1;
+                y[point] = (i / side) * SPACING;
+            }
+            fusionSlam.updateLandmark("Landmark_" + i, "Landmark", x, y, pointsPerObject);
+        }
+        // Observations of random landmarks, seen from a pose one meter to their left
+        Random random = new Random(1);
+        observations = new TrackedObject[OBSERVATIONS];
+        poses = new Pose[OBSERVATIONS];
+        queryX = new double[OBSERVATIONS];
+        queryY = new double[OBSERVATIONS];
+        for (int i = 0; i < OBSERVATIONS; i++) {
+            int landmark = random.nextInt(landmarks);
+            double centerX = (landmark % side) * SPACING;
+            double centerY = (landmark / side) * SPACING;
+            poses[i] = new Pose((float) (centerX - 1), (float) centerY, 0, i);
+            double[] pointsX = new double[pointsPerObject];
+            double[] pointsY = new double[pointsPerObject];
+            for (int point = 0; point < pointsPerObject; point++) {
+                pointsX[point] = 1 + point * 0.1 + random.nextGaussian() * 0.01;
+                pointsY[point] = random.nextGaussian() * 0.01;
+            }
+            observations[i] = new TrackedObject("Landmark_" + landmark, i, "Landmark", pointsX, pointsY);
+            queryX[i] = centerX;
+            queryY[i] = centerY;
+        }
+    }
+
+    @Benchmark
+    public LandMark update() {
+        int i = next++ & (OBSERVATIONS - 1);
+        return fusionSlam.update(observations[i], poses[i]);
+    }
+
+    @Benchmark
+    public List<LandMark> landmarksNear() {
+        int i = next++ & (OBSERVATIONS - 1);
+        return fusionSlam.landmarksNear(queryX[i], queryY[i], 5.0);
+    }
+}
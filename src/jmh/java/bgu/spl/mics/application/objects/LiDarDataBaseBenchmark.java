@@ -0,0 +1,118 @@
+package bgu.spl.mics.application.objects;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of looking up the cloud points of an object at a time in a {@link LiDarDataBase}
+ * of {@code records} records, loaded from JSON into {@code storage} or mapped from the
+ * binary format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LiDarDataBaseBenchmark {
+    private static final int OBJECTS_PER_TICK = 100;
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"10000", "200000"})
+    public int records;
+
+    @Param({"HEAP_DOUBLE", "HEAP_FLOAT", "BINARY"})
+    public String storage;
+
+    @Param({"8"})
+    public int pointsPerRecord;
+
+    private File directory;
+    private LiDarDataBase dataBase;
+    private String[] ids;
+    private int[] times;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("lidar-benchmark").toFile();
+        File json = new File(directory, "lidar_data.json");
+        writeRecording(json);
+        if (storage.equals("BINARY")) {
+            File binary = new File(directory, "lidar_data.bin");
+            LiDarBinaryFormat.convert(json.getPath(), binary.getPath());
+            dataBase = LiDarDataBase.open(binary.getPath(), CloudPointStorage.Kind.HEAP_DOUBLE, true);
+        } else {
+            dataBase = LiDarDataBase.open(json.getPath(), CloudPointStorage.Kind.valueOf(storage), true);
+        }
+        dataBase.getCloudPoints(); // Waits until the whole file is loaded
+        // Random records, so lookups do not walk the table in order
+        Random random = new Random(1);
+        ids = new String[LOOKUPS];
+        times = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            int record = random.nextInt(records);
+            ids[i] = "Object_" + record % OBJECTS_PER_TICK;
+            times[i] = record / OBJECTS_PER_TICK + 1;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Benchmark
+    public StampedCloudPoints lookup(Cursor cursor) {
+        int i = cursor.next++ & (LOOKUPS - 1);
+        return dataBase.getCloudPoints(ids[i], times[i]);
+    }
+
+    private void writeRecording(File file) throws IOException {
+        Random random = new Random(1);
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            out.write('[');
+            for (int record = 0; record < records; record++) {
+                out.write(record == 0 ? "" : ",");
+                out.write("{\"time\":" + (record / OBJECTS_PER_TICK + 1) + ",\"id\":\"Object_" + record % OBJECTS_PER_TICK
+                        + "\",\"cloudPoints\":[");
+                for (int point = 0; point < pointsPerRecord; point++) {
+                    out.write(point == 0 ? "[" : ",[");
+                    out.write(random.nextDouble() + "," + random.nextDouble() + ",0.104]");
+                }
+                out.write("]}");
+            }
+            out.write(']');
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package bgu.spl.mics.application.objects;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moving the points of a tracked object into the global frame with {@link PoseTransform},
+ * against computing the angle for every point and allocating a {@link CloudPoint} per
+ * result. Divide by {@code points} for the cost per point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseTransformBenchmark {
+    @Param({"16", "1024", "65536"})
+    public int points;
+
+    private final PoseTransform transform = new PoseTransform();
+    private TrackedObject trackedObject;
+    private Pose pose;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        double[] x = new double[points];
+        double[] y = new double[points];
+        for (int i = 0; i < points; i++) {
+            x[i] = random.nextDouble() * 10;
+            y[i] = random.nextDouble() * 10;
+        }
+        trackedObject = new TrackedObject("Object", 1, "Object", x, y);
+        pose = new Pose(1.5f, -2.5f, 37.5f, 1);
+    }
+
+    @Benchmark
+    public double[] kernel() {
+        transform.setPose(pose).apply(trackedObject);
+        return transform.getX();
+    }
+
+    @Benchmark
+    public List<CloudPoint> objectPerPoint() {
+        List<CloudPoint> result = new ArrayList<>();
+        for (CloudPoint point : trackedObject.getCoordinates()) {
+            double yaw = Math.toRadians(pose.getYaw());
+            double x = Math.cos(yaw) * point.getX() - Math.sin(yaw) * point.getY() + pose.getX();
+            double y = Math.sin(yaw) * point.getX() + Math.cos(yaw) * point.getY() + pose.getY();
+            result.add(new CloudPoint(x, y));
+        }
+        return result;
+    }
+}
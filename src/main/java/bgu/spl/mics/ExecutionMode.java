@@ -0,0 +1,23 @@
+package bgu.spl.mics;
+
+/**
+ * How a {@link MicroServiceExecutor} runs the micro-services started through it.
+ */
+public enum ExecutionMode {
+    /**
+     * Every micro-service runs its event loop on its own platform thread.
+     */
+    PLATFORM_THREADS,
+    /**
+     * Every micro-service runs its event loop on its own virtual thread.
+     * Requires a build from the java21 profile running on Java 21 or newer.
+     */
+    VIRTUAL_THREADS,
+    /**
+     * Micro-services share a fixed-size work-stealing pool. A service is scheduled
+     * when messages arrive and handles a bounded batch of them before yielding its thread.
+     * Callbacks must not block waiting on other services, and mailboxes should not use
+     * the {@link MailboxPolicy#BLOCK} policy when bounded, since a blocked sender holds a pool thread.
+     */
+    WORK_STEALING_POOL
+}
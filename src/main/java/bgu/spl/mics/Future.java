@@ -1,5 +1,10 @@
 package bgu.spl.mics;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -12,9 +17,11 @@ import java.util.concurrent.TimeUnit;
  */
 public class Future<T> {
 
-	private T result;
-	private boolean isResolved;
+	private volatile T result;
+	private volatile Throwable failure; // Set instead of result when the event could not be delivered
+	private volatile boolean isResolved; // Written after result and failure, so reading true makes them visible
 	private final Object lock;
+	private List<Callback<? super T>> callbacks; // Guarded by lock, null once resolved
 
 	/**
 	 * This should be the only public constructor in this class.
@@ -23,6 +30,7 @@ public class Future<T> {
 		this.result = null;
 		this.isResolved = false;
 		this.lock = new Object();
+		this.callbacks = new ArrayList<>(0);
 	}
 
 	/**
@@ -33,40 +41,69 @@ public class Future<T> {
 	 * @return the result of type T if it is available, waits until it is available.
 	 */
 	public T get() {
-		synchronized (lock) {
-			while (!isResolved) {
-				try {
-					lock.wait();
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					return null;
-				}
-			}
-			return result;
+		if (!isResolved) {
+			awaitResolution(0L, false);
 		}
+		return isResolved ? result : null;
 	}
 
 	/**
 	 * Resolves the result of this Future object.
+	 * Callbacks registered with {@link #onComplete(Callback)} run on the calling thread.
 	 *
 	 * @param result the result to set
 	 */
 	public void resolve(T result) {
-		synchronized (lock) {
-			if (!isResolved) {
-				this.result = result;
-				this.isResolved = true;
-				lock.notifyAll();
-			}
-		}
+		complete(result, null);
 	}
 
 	/**
 	 * @return true if this object has been resolved, false otherwise
 	 */
 	public boolean isDone() {
+		return isResolved;
+	}
+
+	/**
+	 * @return the reason the event was never handled if it failed, null otherwise.
+	 *         A failed Future is done and {@link #get()} returns null for it.
+	 */
+	public Throwable getFailure() {
+		return isResolved ? failure : null;
+	}
+
+	/*
+	 * Resolves this Future with null as failed, for an event the bus refused to deliver.
+	 * Package-private, only the bus fails futures.
+	 */
+	void fail(Throwable cause) {
+		complete(null, cause);
+	}
+
+	private void complete(T result, Throwable failure) {
+		List<Callback<? super T>> toRun;
 		synchronized (lock) {
-			return isResolved;
+			if (isResolved) {
+				return;
+			}
+			this.result = result;
+			this.failure = failure;
+			this.isResolved = true;
+			toRun = callbacks;
+			callbacks = null;
+			lock.notifyAll();
+		}
+		for (int i = 0; i < toRun.size(); i++) {
+			call(toRun.get(i), result);
+		}
+	}
+
+	// A failing callback must neither skip the others nor escape into the resolving service
+	private static <T> void call(Callback<? super T> callback, T result) {
+		try {
+			callback.call(result);
+		} catch (RuntimeException e) {
+			Log.error("A Future callback failed: " + e);
 		}
 	}
 
@@ -80,19 +117,91 @@ public class Future<T> {
 	 * @return the result of type T if it is available, null if the timeout elapsed.
 	 */
 	public T get(long timeout, TimeUnit unit) {
-		synchronized (lock) {
-			if (!isResolved) {
-				try {
-					lock.wait(unit.toMillis(timeout));
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					return null;
+		if (!isResolved) {
+			awaitResolution(System.nanoTime() + unit.toNanos(timeout), true);
+		}
+		return isResolved ? result : null;
+	}
+
+	/**
+	 * Registers {@code callback} to be called with the result once this Future is resolved,
+	 * without blocking the caller. If it is already resolved, the callback is called right away
+	 * on the calling thread, otherwise on the thread that resolves it.
+	 * Callbacks should be short since they delay the resolving thread.
+	 * A failed Future calls them with null, {@link #getFailure()} tells it apart.
+	 * An exception thrown by a callback is logged and does not keep the others from running.
+	 *
+	 * @param callback the callback to call with the result
+	 */
+	public void onComplete(Callback<? super T> callback) {
+		if (!isResolved) {
+			synchronized (lock) {
+				if (!isResolved) {
+					callbacks.add(callback);
+					return;
 				}
 			}
-			if (isResolved) {
-				return result;
+		}
+		call(callback, result);
+	}
+
+	/**
+	 * @return a {@link CompletableFuture} that completes with the result of this Future,
+	 *         or exceptionally with its failure
+	 */
+	public CompletableFuture<T> toCompletableFuture() {
+		CompletableFuture<T> completable = new CompletableFuture<>();
+		onComplete(result -> {
+			if (failure != null) {
+				completable.completeExceptionally(failure);
+			} else {
+				completable.complete(result);
+			}
+		});
+		return completable;
+	}
+
+	/*
+	 * Waits until this Future is resolved, the deadline passes or the thread is interrupted.
+	 * On a pool thread (ExecutionMode.WORK_STEALING_POOL) the pool is told that the thread
+	 * is blocked, so it can start another one and the service resolving this Future still runs.
+	 */
+	private void awaitResolution(long deadline, boolean timed) {
+		ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+			@Override
+			public boolean block() throws InterruptedException {
+				waitOnLock(deadline, timed);
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				return isResolved || (timed && deadline - System.nanoTime() <= 0);
+			}
+		};
+		try {
+			if (ForkJoinTask.inForkJoinPool()) {
+				ForkJoinPool.managedBlock(blocker);
 			} else {
-				return null;
+				blocker.block();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void waitOnLock(long deadline, boolean timed) throws InterruptedException {
+		synchronized (lock) {
+			while (!isResolved) {
+				if (!timed) {
+					lock.wait();
+				} else {
+					long remaining = deadline - System.nanoTime(); // Wake-ups may be spurious or early
+					if (remaining <= 0) {
+						return;
+					}
+					TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+				}
 			}
 		}
 	}
@@ -0,0 +1,52 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the messages that were added to a mailbox and are not yet fully handled,
+ * so a caller can wait until the whole system has nothing left to do.
+ * A message counts from the moment it is delivered until the callback handling it
+ * returns, so messages sent from inside a callback are counted before the message
+ * that caused them is done. Counting is off until {@link #enable()} is called,
+ * which must happen before any message is sent.
+ */
+final class IdleTracker {
+    private final AtomicLong pending = new AtomicLong();
+    private final Object idleLock = new Object();
+    private volatile boolean enabled = false;
+
+    void enable() {
+        enabled = true;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void added() {
+        if (enabled) {
+            pending.incrementAndGet();
+        }
+    }
+
+    void done() {
+        if (enabled && pending.decrementAndGet() == 0) {
+            synchronized (idleLock) {
+                idleLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every counted message has been handled or discarded.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void awaitIdle() throws InterruptedException {
+        synchronized (idleLock) {
+            while (pending.get() != 0) {
+                idleLock.wait();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package bgu.spl.mics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A small asynchronous logger for the micro-services. Callers check the level and
+ * build the message only when it is enabled, then add it to a lock-free ring buffer;
+ * a background thread formats the records and writes them to standard output.
+ * A caller never blocks on the console: when the buffer is full the record is
+ * dropped and counted, and the writer reports how many were dropped.
+ * <p>
+ * Call {@link #flush()} before the program exits, the writer is a daemon thread.
+ */
+public final class Log {
+    private static final int BUFFER_CAPACITY = 1 << 14;
+    // How long the writer sleeps when there is nothing to write
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private static volatile LogLevel level = LogLevel.INFO;
+    private static final LogBuffer buffer = new LogBuffer(BUFFER_CAPACITY);
+    private static final LongAdder dropped = new LongAdder();
+    private static volatile long written = 0; // Records consumed by the writer, published after they were flushed
+    private static final Thread writer = startWriter();
+
+    private Log() {
+    }
+
+    public static LogLevel getLevel() {
+        return level;
+    }
+
+    public static void setLevel(LogLevel level) {
+        Log.level = level;
+    }
+
+    /**
+     * @return true if records of the given level are logged
+     */
+    public static boolean isEnabled(LogLevel recordLevel) {
+        return recordLevel != LogLevel.OFF && recordLevel.compareTo(level) >= 0;
+    }
+
+    public static void debug(Supplier<String> message) {
+        log(LogLevel.DEBUG, message);
+    }
+
+    public static void info(Supplier<String> message) {
+        log(LogLevel.INFO, message);
+    }
+
+    public static void info(String message) {
+        log(LogLevel.INFO, message);
+    }
+
+    public static void warn(Supplier<String> message) {
+        log(LogLevel.WARN, message);
+    }
+
+    public static void warn(String message) {
+        log(LogLevel.WARN, message);
+    }
+
+    public static void error(String message) {
+        log(LogLevel.ERROR, message);
+    }
+
+    /**
+     * Logs the message built by {@code message}, which is only called if the level is enabled.
+     */
+    public static void log(LogLevel recordLevel, Supplier<String> message) {
+        if (isEnabled(recordLevel)) {
+            log(recordLevel, message.get());
+        }
+    }
+
+    public static void log(LogLevel recordLevel, String message) {
+        if (isEnabled(recordLevel)
+                && !buffer.offer(recordLevel, System.currentTimeMillis(), Thread.currentThread().getName(), message)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Waits until every record logged before this call has been written, or until
+     * the writer has made no progress for a second.
+     */
+    public static void flush() {
+        long target = buffer.claimed();
+        long lastWritten = written;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (written < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+            if (written != lastWritten) {
+                lastWritten = written;
+                deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            }
+        }
+    }
+
+    private static Thread startWriter() {
+        Thread thread = new Thread(Log::write, "Log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // The writer thread: drains the buffer, flushing stdout whenever it runs dry
+    private static void write() {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        StringBuilder line = new StringBuilder(256);
+        ZoneId zone = ZoneId.systemDefault();
+        LogBuffer.Consumer format = (recordLevel, time, thread, message) -> {
+            line.setLength(0);
+            TIME_FORMAT.formatTo(Instant.ofEpochMilli(time).atZone(zone).toLocalTime(), line);
+            line.append(' ').append(recordLevel).append(" [").append(thread).append("] ").append(message).append('\n');
+            try {
+                out.append(line);
+            } catch (IOException e) {
+                // Nowhere to report it, keep draining so callers never block
+            }
+        };
+        long reportedDrops = 0;
+        while (true) {
+            boolean any = false;
+            while (buffer.poll(format)) {
+                any = true;
+            }
+            long drops = dropped.sum();
+            if (drops != reportedDrops) {
+                format.accept(LogLevel.WARN, System.currentTimeMillis(), "Log-writer",
+                        (drops - reportedDrops) + " log records dropped, the log buffer was full");
+                reportedDrops = drops;
+                any = true;
+            }
+            if (any) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    // As above
+                }
+                written = buffer.consumed();
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock-free ring buffer of log records with many producers and a single consumer.
+ * Each slot has a sequence number telling whether it is free for the producer of a given
+ * position or holds a record for the consumer (D. Vyukov's bounded queue). Producers claim
+ * a position with one CAS and never wait: when the buffer is full, {@link #offer} fails.
+ */
+final class LogBuffer {
+    private final int mask;
+    private final AtomicLongArray sequences;
+    // Record fields, published by the volatile write of the slot's sequence
+    private final LogLevel[] levels;
+    private final long[] times;
+    private final String[] threads;
+    private final String[] messages;
+    private final AtomicLong tail = new AtomicLong(); // Next position to claim
+    private long head = 0; // Next position to consume, consumer only
+
+    /**
+     * @param capacity the number of records the buffer holds, rounded up to a power of two
+     */
+    LogBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        levels = new LogLevel[size];
+        times = new long[size];
+        threads = new String[size];
+        messages = new String[size];
+    }
+
+    /**
+     * @return false if the buffer was full and the record was not added
+     */
+    boolean offer(LogLevel level, long time, String thread, String message) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    levels[slot] = level;
+                    times[slot] = time;
+                    threads[slot] = thread;
+                    messages[slot] = message;
+                    sequences.set(slot, position + 1); // Publishes the record
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // The consumer has not freed this slot yet
+            } else {
+                position = tail.get(); // Another producer took it
+            }
+        }
+    }
+
+    /**
+     * Passes the next record to {@code consumer} and frees its slot. Consumer thread only.
+     *
+     * @return false if there was no record to consume
+     */
+    boolean poll(Consumer consumer) {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return false;
+        }
+        consumer.accept(levels[slot], times[slot], threads[slot], messages[slot]);
+        threads[slot] = null;
+        messages[slot] = null;
+        sequences.set(slot, head + mask + 1); // Free for the producer one lap later
+        head++;
+        return true;
+    }
+
+    /**
+     * @return the number of positions claimed by producers so far
+     */
+    long claimed() {
+        return tail.get();
+    }
+
+    /**
+     * @return the number of records consumed so far, consumer thread only
+     */
+    long consumed() {
+        return head;
+    }
+
+    interface Consumer {
+        void accept(LogLevel level, long time, String thread, String message);
+    }
+}
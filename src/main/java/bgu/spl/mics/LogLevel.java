@@ -0,0 +1,9 @@
+package bgu.spl.mics;
+
+/**
+ * The levels of {@link Log}, from the most to the least verbose.
+ * Setting the level to OFF disables logging.
+ */
+public enum LogLevel {
+    DEBUG, INFO, WARN, ERROR, OFF
+}
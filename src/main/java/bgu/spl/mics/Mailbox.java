@@ -0,0 +1,326 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * The message queue of a single registered {@link MicroService}.
+ * A mailbox may be bounded, in which case its {@link MailboxPolicy} decides what
+ * happens to messages that arrive while it is full. Besides the queue itself it
+ * keeps the largest size it has reached, the number of messages that found it full,
+ * the number its policy discarded and the number its service took, so the statistics output can show which services
+ * fall behind.
+ */
+public final class Mailbox {
+    public static final int UNBOUNDED = 0;
+
+    // Placed in the queue by close() to wake a thread blocked in take()
+    private static final Message CLOSED = new Message() { };
+    // How long a blocked sender waits before checking whether the mailbox was closed
+    private static final long BLOCKED_SENDER_RECHECK_MS = 10;
+
+    private final BlockingQueue<Message> queue;
+    private final int capacity;
+    private final MailboxPolicy policy;
+    private final AtomicInteger peakSize = new AtomicInteger();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final LongAdder takenCount = new LongAdder();
+    private volatile boolean closed = false;
+    // Called after every message added, lets a pooled service get scheduled
+    private volatile Runnable deliveryListener;
+    private final IdleTracker idleTracker;
+    private final MessageMetrics metrics; // Null unless metrics are enabled
+    private final MicroService owner;
+    private final MessageRecorder recorder; // Null unless messages are recorded
+
+    /**
+     * @param capacity    the maximal number of waiting messages, or {@link #UNBOUNDED}
+     * @param policy      what to do with messages that arrive while the mailbox is full
+     * @param idleTracker counts the messages added to and handled from this mailbox
+     * @param metrics     records wait times and depths, or null
+     * @param owner       the service the mailbox belongs to
+     * @param recorder    records every message the service takes, or null
+     */
+    Mailbox(int capacity, MailboxPolicy policy, IdleTracker idleTracker, MessageMetrics metrics,
+            MicroService owner, MessageRecorder recorder) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Mailbox capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.idleTracker = idleTracker;
+        this.metrics = metrics;
+        this.owner = owner;
+        this.recorder = recorder;
+        this.queue = new LinkedBlockingQueue<>(capacity == UNBOUNDED ? Integer.MAX_VALUE : capacity);
+    }
+
+    /**
+     * Adds {@code message} to the mailbox, applying the overflow policy if it is full.
+     * Messages sent to a closed mailbox are discarded.
+     *
+     * @param message   the message to add
+     * @param sender    the service that sent it, or null if it was not sent by a service
+     * @param discarded called with every message the policy throws away,
+     *                  which may be {@code message} itself
+     * @param rejected  called instead with {@code message} when the {@link MailboxPolicy#FAIL_FUTURE}
+     *                  policy refuses it
+     */
+    void deliver(Message message, MicroService sender, Consumer<Message> discarded, Consumer<Message> rejected) {
+        if (closed) {
+            discarded.accept(message);
+            return;
+        }
+        idleTracker.added(); // Before the receiver can see it, so the count never drops below zero
+        Message entry = message;
+        if (metrics != null) {
+            metrics.recordDepth(message.getClass(), queue.size());
+        }
+        if (metrics != null || recorder != null) {
+            entry = new Envelope(message, System.nanoTime(), sender);
+        }
+        if (queue.offer(entry)) {
+            enqueued(entry, discarded);
+            return;
+        }
+        overflowCount.incrementAndGet();
+        switch (policy) {
+            case DROP_OLDEST:
+                while (!queue.offer(entry)) {
+                    Message oldest = queue.poll();
+                    if (oldest == CLOSED) {
+                        queue.offer(CLOSED);
+                        drop(entry, discarded);
+                        return;
+                    }
+                    if (oldest != null) {
+                        dropOverflow(oldest, discarded);
+                    }
+                }
+                enqueued(entry, discarded);
+                break;
+            case DROP_NEWER_BROADCAST:
+                if (message instanceof Broadcast && containsMessageOfType(message.getClass())) {
+                    dropOverflow(entry, discarded);
+                } else {
+                    putBlocking(entry, discarded);
+                }
+                break;
+            case FAIL_FUTURE:
+                dropOverflow(entry, rejected);
+                break;
+            default:
+                putBlocking(entry, discarded);
+        }
+    }
+
+    /**
+     * Takes the next message, waiting until one is available.
+     *
+     * @return the next message in the mailbox
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws IllegalStateException if the mailbox was closed
+     */
+    Message take() throws InterruptedException {
+        Message message = queue.take();
+        if (message == CLOSED) {
+            queue.offer(CLOSED); // Keep the mailbox poisoned for any other waiter
+            throw new IllegalStateException("MicroService was unregistered while waiting");
+        }
+        takenCount.increment();
+        return taken(message);
+    }
+
+    /**
+     * Takes the next message if one is available, without waiting.
+     *
+     * @return the next message in the mailbox, or null if it is empty
+     * @throws IllegalStateException if the mailbox was closed
+     */
+    Message poll() {
+        Message message = queue.poll();
+        if (message == CLOSED) {
+            queue.offer(CLOSED);
+            throw new IllegalStateException("MicroService was unregistered");
+        }
+        if (message == null) {
+            return null;
+        }
+        takenCount.increment();
+        return taken(message);
+    }
+
+    /**
+     * @param listener called on the sending thread after a message is added to the mailbox
+     */
+    void setDeliveryListener(Runnable listener) {
+        this.deliveryListener = listener;
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Discards all waiting messages and wakes up the receiver if it is blocked in {@link #take()}.
+     *
+     * @param discarded called with every message that was still waiting
+     */
+    void close(Consumer<Message> discarded) {
+        closed = true;
+        List<Message> waiting = new ArrayList<>();
+        do {
+            queue.drainTo(waiting); // Senders may still be filling the queue
+        } while (!queue.offer(CLOSED));
+        for (int i = 0; i < waiting.size(); i++) {
+            if (waiting.get(i) != CLOSED) {
+                drop(waiting.get(i), discarded);
+            }
+        }
+    }
+
+    /**
+     * @return the maximal number of waiting messages, or {@link #UNBOUNDED}
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public MailboxPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of messages currently waiting
+     */
+    public int size() {
+        return closed ? 0 : queue.size();
+    }
+
+    /**
+     * @return the largest number of messages that were waiting at the same time
+     */
+    public int getPeakSize() {
+        return peakSize.get();
+    }
+
+    /**
+     * @return the number of messages the service took from the mailbox
+     */
+    public long getTakenCount() {
+        return takenCount.sum();
+    }
+
+    /**
+     * @return the number of deliveries that found the mailbox full, including those
+     *         that waited for room under {@link MailboxPolicy#BLOCK}
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    /**
+     * @return the number of messages the policy threw away because the mailbox was full,
+     *         not counting those discarded when the mailbox was closed
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private void putBlocking(Message message, Consumer<Message> discarded) {
+        try {
+            while (!queue.offer(message, BLOCKED_SENDER_RECHECK_MS, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    drop(message, discarded); // The receiver is gone, nobody will make room
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drop(message, discarded);
+            return;
+        }
+        enqueued(message, discarded);
+    }
+
+    private void enqueued(Message message, Consumer<Message> discarded) {
+        if (closed && queue.remove(message)) {
+            drop(message, discarded); // Slipped in after close() drained the queue
+            return;
+        }
+        recordSize();
+        Runnable listener = deliveryListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    // Unwraps a message taken by the service, recording how long it waited and the message itself
+    private Message taken(Message entry) {
+        if (entry instanceof Envelope) {
+            Envelope envelope = (Envelope) entry;
+            if (metrics != null) {
+                metrics.recordWait(envelope.message.getClass(), System.nanoTime() - envelope.enqueuedAt);
+            }
+            if (recorder != null) {
+                // In the order the service handles them, which replaying must reproduce
+                recorder.record(envelope.message, envelope.sender, owner);
+            }
+            return envelope.message;
+        }
+        return entry;
+    }
+
+    private void dropOverflow(Message entry, Consumer<Message> discarded) {
+        droppedCount.incrementAndGet();
+        drop(entry, discarded);
+    }
+
+    private void drop(Message entry, Consumer<Message> discarded) {
+        idleTracker.done();
+        discarded.accept(entry instanceof Envelope ? ((Envelope) entry).message : entry);
+    }
+
+    private boolean containsMessageOfType(Class<?> type) {
+        Iterator<Message> it = queue.iterator(); // Weakly consistent, never throws
+        while (it.hasNext()) {
+            Message entry = it.next();
+            Message message = entry instanceof Envelope ? ((Envelope) entry).message : entry;
+            if (message.getClass() == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A message with the time it entered the mailbox and its sender, queued instead of it
+    // when metrics are enabled or messages are recorded
+    private static final class Envelope implements Message {
+        private final Message message;
+        private final long enqueuedAt;
+        private final MicroService sender;
+
+        private Envelope(Message message, long enqueuedAt, MicroService sender) {
+            this.message = message;
+            this.enqueuedAt = enqueuedAt;
+            this.sender = sender;
+        }
+    }
+
+    private void recordSize() {
+        int size = queue.size();
+        int peak = peakSize.get();
+        while (size > peak && !peakSize.compareAndSet(peak, size)) {
+            peak = peakSize.get();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package bgu.spl.mics;
+
+/**
+ * Decides what a {@link Mailbox} does with a new message when it is already
+ * holding as many messages as its capacity allows.
+ */
+public enum MailboxPolicy {
+    /**
+     * The sender waits until the receiving micro-service makes room.
+     */
+    BLOCK,
+    /**
+     * The oldest waiting message is discarded to make room for the new one.
+     * If the discarded message is an {@link Event}, its {@link Future} is resolved with null.
+     */
+    DROP_OLDEST,
+    /**
+     * A new {@link Broadcast} is discarded if a broadcast of the same type is
+     * still waiting in the mailbox. Any other message makes the sender wait.
+     */
+    DROP_NEWER_BROADCAST,
+    /**
+     * The new message is discarded. If it is an {@link Event}, its {@link Future}
+     * fails right away: {@link Future#getFailure()} returns an {@link IllegalStateException}
+     * and {@link Future#toCompletableFuture()} completes exceptionally.
+     */
+    FAIL_FUTURE
+}
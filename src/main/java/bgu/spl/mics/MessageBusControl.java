@@ -0,0 +1,184 @@
+package bgu.spl.mics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The settings and instruments of the {@link MessageBusImpl}: mailbox capacities and
+ * policies, latency metrics, message recording, idle tracking, and the counts of the
+ * messages sent and of every mailbox. They are kept apart from the bus so that the bus
+ * itself only offers the {@link MessageBus} interface.
+ * <p>
+ * Settings apply to the mailboxes created afterwards, so they must be made before the
+ * micro-services register.
+ */
+public final class MessageBusControl {
+    private static final MessageBusControl instance = new MessageBusControl();
+
+    // Mailbox capacity and policy per service name, applied when the service registers
+    private final ConcurrentHashMap<String, MailboxSettings> mailboxSettings = new ConcurrentHashMap<>();
+    private volatile MailboxSettings defaultMailboxSettings = new MailboxSettings(Mailbox.UNBOUNDED, MailboxPolicy.BLOCK);
+    // Every mailbox by service key, kept after unregistering so its statistics can be reported
+    private final ConcurrentHashMap<String, Mailbox> mailboxesByKey = new ConcurrentHashMap<>();
+    // Messages sent per message type
+    private final ConcurrentHashMap<Class<? extends Message>, LongAdder> sentCounts = new ConcurrentHashMap<>();
+    // Counts messages not yet handled, for callers that advance time only when the system is idle
+    private final IdleTracker idleTracker = new IdleTracker();
+    // Latency histograms, null unless enabled
+    private volatile MessageMetrics metrics;
+    // Records the messages services take, null unless recording
+    private volatile MessageRecorder recorder;
+    // Set while a MessageReplayer feeds recorded messages to the services, which then send nothing
+    private volatile boolean replaying = false;
+
+    private MessageBusControl() {
+    }
+
+    /**
+     * @return the controls of the single message bus
+     */
+    public static MessageBusControl getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the mailbox capacity and overflow policy for micro-services named
+     * {@code serviceName}. Takes effect for services that register afterwards.
+     * <p>
+     * @param serviceName the service name, or null to set the default for services without their own settings
+     * @param capacity    the maximal number of waiting messages, or {@link Mailbox#UNBOUNDED}
+     * @param policy      what to do with messages that arrive while the mailbox is full
+     */
+    public void configureMailbox(String serviceName, int capacity, MailboxPolicy policy) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Mailbox capacity must not be negative: " + capacity);
+        }
+        MailboxSettings settings = new MailboxSettings(capacity, policy);
+        if (serviceName == null) {
+            defaultMailboxSettings = settings;
+        } else {
+            mailboxSettings.put(serviceName, settings);
+        }
+    }
+
+    /**
+     * Service names need not be unique, so each mailbox is keyed by the name of its
+     * service followed by {@code #2}, {@code #3} and so on if other services registered
+     * under that name before it.
+     *
+     * @return the mailbox of every micro-service that has registered, by service key
+     */
+    public Map<String, Mailbox> getMailboxes() {
+        return Collections.unmodifiableMap(mailboxesByKey);
+    }
+
+    /**
+     * @return the number of messages sent so far by message type, counting only types
+     * that had a subscription when they were sent
+     */
+    public Map<Class<? extends Message>, Long> getSentCounts() {
+        Map<Class<? extends Message>, Long> counts = new HashMap<>();
+        for (Map.Entry<Class<? extends Message>, LongAdder> entry : sentCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Starts recording per message type latency histograms, see {@link MessageMetrics}.
+     * Must be called before any micro-service starts; mailboxes created earlier are not measured.
+     * <p>
+     * @return the metrics being recorded
+     */
+    public synchronized MessageMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new MessageMetrics();
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the metrics being recorded, or null if they are not enabled
+     */
+    public MessageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Starts recording every message the micro-services take from their mailboxes, in the
+     * order each of them handles them, see {@link MessageRecorder}. Must be called before
+     * any micro-service starts; closing the recorder stops recording.
+     * <p>
+     * @param recorder the recorder to write to
+     */
+    public synchronized void startRecording(MessageRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Starts counting the messages that are sent and not yet handled, which
+     * {@link #awaitIdle()} relies on. Must be called before any micro-service starts.
+     */
+    public void enableIdleTracking() {
+        idleTracker.enable();
+    }
+
+    /**
+     * Waits until every message sent so far, and every message sent while handling
+     * them, has been handled by its receiver or discarded. Must not be called from
+     * inside a callback, since the message being handled is itself counted until the
+     * callback returns.
+     * <p>
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws IllegalStateException if idle tracking was not enabled
+     */
+    public void awaitIdle() throws InterruptedException {
+        if (!idleTracker.isEnabled()) {
+            throw new IllegalStateException("Idle tracking is not enabled");
+        }
+        idleTracker.awaitIdle();
+    }
+
+    // Called by the bus when a service registers
+    Mailbox createMailbox(MicroService m) {
+        MailboxSettings settings = mailboxSettings.getOrDefault(m.getName(), defaultMailboxSettings);
+        Mailbox mailbox = new Mailbox(settings.capacity, settings.policy, idleTracker, metrics, m, recorder);
+        String key = m.getName();
+        for (int n = 2; mailboxesByKey.putIfAbsent(key, mailbox) != null; n++) {
+            key = m.getName() + "#" + n;
+        }
+        return mailbox;
+    }
+
+    // Called by the bus once per message type, the bus counts on the returned adder itself
+    LongAdder sentCounter(Class<? extends Message> type) {
+        return sentCounts.computeIfAbsent(type, k -> new LongAdder());
+    }
+
+    // Called by a micro-service after the callback for a message it took returned
+    void messageHandled() {
+        idleTracker.done();
+    }
+
+    // Set by MessageReplayer around a replay, see MessageBusImpl.sendEvent and sendBroadcast
+    void setReplaying(boolean replaying) {
+        this.replaying = replaying;
+    }
+
+    boolean isReplaying() {
+        return replaying;
+    }
+
+    private static final class MailboxSettings {
+        private final int capacity;
+        private final MailboxPolicy policy;
+
+        private MailboxSettings(int capacity, MailboxPolicy policy) {
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+    }
+}
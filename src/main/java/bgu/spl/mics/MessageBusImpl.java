@@ -1,27 +1,36 @@
 package bgu.spl.mics;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The {@link MessageBusImpl class is the implementation of the MessageBus interface.
  * Write your implementation here!
  * Only one public method (in addition to getters which can be public solely for unit testing) may be added to this class
  * All other methods and members you add the class must be private.
+ * <p>
+ * The settings and statistics of the bus are kept in {@link MessageBusControl}. Besides
+ * private members, the bus has three package-private hooks: {@link MicroService} passes
+ * itself as the sender of what it sends, so that it can be recorded, and
+ * {@link MicroServiceExecutor} reads a pooled service's mailbox without blocking.
  */
 public class MessageBusImpl implements MessageBus {
-	private static MessageBusImpl instance = null;
-	private final ConcurrentHashMap <Class<?extends Message>, List<MicroService>> messages ;
-	private final ConcurrentHashMap <MicroService, BlockingQueue<Message>> queues ;
-	private final ConcurrentHashMap<Event<?>, Future<?>> futureEvents;
+	private static volatile MessageBusImpl instance = null;
+	private final ConcurrentHashMap <Class<?extends Message>, Route> messages ;
+	private final ConcurrentHashMap <MicroService, Mailbox> queues ;
+	// Events that were sent and not yet completed, removed as soon as they are completed
+	private final ConcurrentHashMap<Event<?>, PendingEvent> futureEvents;
+	// Mailbox settings, metrics, recording and idle tracking
+	private final MessageBusControl control;
 	// Private constructor to prevent instantiation
 	private MessageBusImpl() {
 		messages = new ConcurrentHashMap<>();
 		queues = new ConcurrentHashMap<>();
 		futureEvents = new ConcurrentHashMap<>();
+		control = MessageBusControl.getInstance();
 	}
 
 	// Public method to provide the single instance
@@ -37,124 +46,193 @@ public class MessageBusImpl implements MessageBus {
 	}
 	@Override
 	public <T> void subscribeEvent(Class<? extends Event<T>> type, MicroService m) {
-		synchronized (messages) {
-			if (!messages.containsKey(type)) {
-				messages.put(type, new CopyOnWriteArrayList<>());
-			}
-			messages.get(type).add(m);
-		}
+		messages.computeIfAbsent(type, k -> new Route(control.sentCounter(k))).add(m);
 	}
 
 	@Override
 	public void subscribeBroadcast(Class<? extends Broadcast> type, MicroService m) {
-		synchronized (messages) {
-			if (!messages.containsKey(type)) {
-				messages.put(type, new CopyOnWriteArrayList<>());
-			}
-			messages.get(type).add(m);
-		}
-
+		messages.computeIfAbsent(type, k -> new Route(control.sentCounter(k))).add(m);
 	}
 
 	@Override
 	public <T> void complete(Event<T> e, T result) {
-		if (futureEvents.get(e) != null) {
-			futureEvents.get(e).resolve(result);
+		PendingEvent pending = futureEvents.remove(e);
+		if (pending != null) {
+			@SuppressWarnings("unchecked")
+			Future<T> future = (Future<T>) pending.future;
+			future.resolve(result);
 		}
 	}
 
 
 	@Override
 	public void sendBroadcast(Broadcast b) {
-		List<MicroService> subscribers;
-		synchronized (messages) {
-			subscribers = messages.get(b.getClass());
-		}
-		if (subscribers != null) {
-			for (int i = 0; i < subscribers.size(); i++) {
-				MicroService m = subscribers.get(i);
-				queues.putIfAbsent(m, new LinkedBlockingQueue<>());
-				try {
-					queues.get(m).put(b);
-				} catch (InterruptedException ex) {
-					Thread.currentThread().interrupt();
-				}
+		sendBroadcast(b, null);
+	}
+
+	// The sender is only kept for recording
+	void sendBroadcast(Broadcast b, MicroService sender) {
+		Route route = messages.get(b.getClass());
+		if (route == null || control.isReplaying()) {
+			return;
+		}
+		route.sent.increment();
+		MicroService[] subscribers = route.subscribers; // Immutable snapshot, safe to iterate
+		for (int i = 0; i < subscribers.length; i++) {
+			Mailbox mailbox = queues.get(subscribers[i]);
+			if (mailbox != null) { // Skip services that unregistered after the snapshot was taken
+				mailbox.deliver(b, sender, this::discard, this::discard);
 			}
 		}
 	}
 
 	@Override
 	public <T> Future<T> sendEvent(Event<T> e) {
-		List<MicroService> subscribers;
-		synchronized (messages) {
-			subscribers = messages.get(e.getClass());
+		return sendEvent(e, null);
+	}
+
+	<T> Future<T> sendEvent(Event<T> e, MicroService sender) {
+		Route route = messages.get(e.getClass());
+		if (route == null) {
+			return null;
+		}
+		if (control.isReplaying()) {
+			return new Future<>(); // Its recorded handling is replayed instead
 		}
-		if (subscribers == null || subscribers.isEmpty()) {
+		route.sent.increment();
+		MicroService[] subscribers = route.subscribers;
+		Mailbox mailbox = null;
+		for (int attempt = 0; attempt < subscribers.length && mailbox == null; attempt++) {
+			mailbox = queues.get(subscribers[route.next(subscribers.length)]); // Round-robin
+		}
+		if (mailbox == null) {
 			return null;
 		}
 
 		Future<T> future = new Future<>();
-		futureEvents.put(e, future); // Associate the event with the Future
-
-		synchronized (messages) {
-			List<MicroService> eventSubscribers = messages.get(e.getClass());
-			if (eventSubscribers != null && !eventSubscribers.isEmpty()) {
-				MicroService target = eventSubscribers.remove(0);
-				eventSubscribers.add(target); // Rotate for round-robin
-				queues.putIfAbsent(target, new LinkedBlockingQueue<>());
-				try {
-					queues.get(target).add(e); // Use add instead of put
-				} catch (IllegalStateException ex) {
-					System.err.println("Queue full: " + ex.getMessage());
-				}
-			}
-		}
-
+		futureEvents.put(e, new PendingEvent(future, mailbox)); // Associate the event with the Future before it can be handled
+		mailbox.deliver(e, sender, this::discard, this::reject);
 		return future;
 	}
 
 	@Override
 	public void register(MicroService m) {
-		synchronized (queues) {
-			if (!queues.containsKey(m)) {
-				queues.put(m, new LinkedBlockingQueue<>());
-			}
-		}
+		queues.computeIfAbsent(m, control::createMailbox);
 	}
 
 
 	@Override
 	public void unregister(MicroService m) {
-		queues.remove(m);
-		synchronized (messages) {
-			List<Class<? extends Message>> keys = new ArrayList<>(messages.keySet());
-			for (int i = 0; i < keys.size(); i++) {
-				List<MicroService> subscribers = messages.get(keys.get(i));
-				if (subscribers != null) {
-					subscribers.remove(m);
-				}
-			}
+		for (Route route : messages.values()) {
+			route.remove(m);
+		}
+		Mailbox mailbox = queues.remove(m);
+		if (mailbox != null) {
+			mailbox.close(this::discard); // Wakes up the service if it is blocked on its mailbox
+			failPendingEvents(mailbox);
 		}
 	}
 
 
 	@Override
 	public Message awaitMessage(MicroService m) throws InterruptedException {
-		BlockingQueue<Message> queue = queues.get(m);
-		if (queue == null) {
+		Mailbox mailbox = queues.get(m);
+		if (mailbox == null) {
 			throw new IllegalStateException("MicroService is not registered");
 		}
+		return mailbox.take(); // Blocks until a message is available
+	}
 
-		while (true) {
-			synchronized (queue) {
-				if (!queue.isEmpty()) {
-					return queue.poll(); // Retrieve and remove the head of the queue
-				}
+	// Used by MicroServiceExecutor to drain a pooled service's mailbox without blocking
+	Mailbox getMailbox(MicroService m) {
+		return queues.get(m);
+	}
+
+	// Called by a mailbox for every message it throws away
+	private void discard(Message message) {
+		if (message instanceof Event) {
+			PendingEvent pending = futureEvents.remove(message);
+			if (pending != null) {
+				pending.future.resolve(null); // Nobody will handle this event
 			}
-			Thread.sleep(10); // Small wait before re-checking
 		}
 	}
 
-	
+	// Called by a mailbox for a message its FAIL_FUTURE policy refused
+	private void reject(Message message) {
+		PendingEvent pending = futureEvents.remove(message);
+		if (pending != null) {
+			pending.future.fail(new IllegalStateException(
+					"Mailbox full, " + message.getClass().getSimpleName() + " was not delivered"));
+		}
+	}
+
+	// Resolves with null the Future of every event that was routed to an unregistered service and not completed
+	private void failPendingEvents(Mailbox owner) {
+		Iterator<Map.Entry<Event<?>, PendingEvent>> it = futureEvents.entrySet().iterator();
+		while (it.hasNext()) {
+			PendingEvent pending = it.next().getValue();
+			if (pending.owner == owner) {
+				it.remove();
+				pending.future.resolve(null);
+			}
+		}
+	}
+
+	private static final class PendingEvent {
+		private final Future<?> future;
+		private final Mailbox owner; // The mailbox of the service the event was routed to
+
+		private PendingEvent(Future<?> future, Mailbox owner) {
+			this.future = future;
+			this.owner = owner;
+		}
+	}
+
+	/**
+	 * The subscribers of a single message type.
+	 * Senders read an immutable snapshot of the subscriber array and advance an
+	 * atomic round-robin cursor, so publishing takes no lock and copies nothing.
+	 * Subscribing and unregistering replace the snapshot under the route's own lock.
+	 */
+	private static final class Route {
+		private volatile MicroService[] subscribers = new MicroService[0];
+		private final AtomicInteger cursor = new AtomicInteger();
+		private final LongAdder sent; // Messages of this type sent
+
+		private Route(LongAdder sent) {
+			this.sent = sent;
+		}
+
+		private synchronized void add(MicroService m) {
+			MicroService[] current = subscribers;
+			for (int i = 0; i < current.length; i++) {
+				if (current[i] == m) {
+					return;
+				}
+			}
+			MicroService[] updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = m;
+			subscribers = updated;
+		}
+
+		private synchronized void remove(MicroService m) {
+			MicroService[] current = subscribers;
+			for (int i = 0; i < current.length; i++) {
+				if (current[i] == m) {
+					MicroService[] updated = new MicroService[current.length - 1];
+					System.arraycopy(current, 0, updated, 0, i);
+					System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+					subscribers = updated;
+					return;
+				}
+			}
+		}
+
+		// Index of the next subscriber in round-robin order for a snapshot of the given size
+		private int next(int size) {
+			return (cursor.getAndIncrement() & Integer.MAX_VALUE) % size;
+		}
+	}
 
 }
@@ -0,0 +1,16 @@
+package bgu.spl.mics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes the contents of one message type to a {@link MessageLog} and reads them back.
+ *
+ * @param <M> the message type
+ */
+public interface MessageCodec<M extends Message> {
+    void write(M message, DataOutput out) throws IOException;
+
+    M read(DataInput in) throws IOException;
+}
@@ -0,0 +1,67 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * The codecs of the message types that a {@link MessageRecorder} writes and a
+ * {@link MessageReplayer} reads, and the broadcast that tells the tick.
+ * Messages of a type without a codec are recorded without their contents and
+ * cannot be replayed.
+ * <p>
+ * The log is a little-endian file: a 16-byte header (the magic "GRML", a version and
+ * the chunk size), then records. A record is its length, a kind byte and its body:
+ * <ul>
+ * <li>a service: its position in the recorder's list of services and its UTF-8 name,
+ *     one for each service before any message;</li>
+ * <li>a name: its id and UTF-8 text, defining a message type before its first use;</li>
+ * <li>a message: nanoseconds since recording started, the tick, the id of the type, the
+ *     positions of the sender and receiver (-1 when not a listed service), then the payload.</li>
+ * </ul>
+ * Records never cross a chunk boundary; a length of -1 or fewer than four bytes left
+ * mean the rest of the chunk is unused, and a length of 0 ends the log.
+ */
+public final class MessageLog {
+    static final int MAGIC = 0x4C4D5247; // "GRML" in little-endian order
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 16;
+    static final byte NAME = 1;
+    static final byte MESSAGE = 2;
+    static final byte SERVICE = 3;
+    static final int PADDING = -1;
+    // Length, kind, nanos, tick, type, sender and receiver
+    static final int MESSAGE_HEADER_SIZE = 4 + 1 + 8 + 4 + 2 + 2 + 2;
+
+    private final ConcurrentHashMap<String, MessageCodec<?>> codecs = new ConcurrentHashMap<>();
+    private volatile Class<? extends Message> tickType;
+    private volatile ToIntFunction<Message> tickOf;
+
+    /**
+     * Sets the codec of the message type {@code type}.
+     */
+    public <M extends Message> MessageLog register(Class<M> type, MessageCodec<M> codec) {
+        codecs.put(type.getName(), codec);
+        return this;
+    }
+
+    /**
+     * Sets the broadcast that starts each tick; messages are stamped with the tick of
+     * the last such broadcast recorded.
+     */
+    @SuppressWarnings("unchecked")
+    public <B extends Broadcast> MessageLog setTickBroadcast(Class<B> type, ToIntFunction<B> tick) {
+        tickOf = message -> tick.applyAsInt((B) message);
+        tickType = type;
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    <M extends Message> MessageCodec<M> codecOf(String typeName) {
+        return (MessageCodec<M>) codecs.get(typeName);
+    }
+
+    // The tick the message starts, or -1 if it is not the tick broadcast
+    int tickOf(Message message) {
+        return message.getClass() == tickType ? tickOf.applyAsInt(message) : -1;
+    }
+}
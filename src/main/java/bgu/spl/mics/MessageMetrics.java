@@ -0,0 +1,124 @@
+package bgu.spl.mics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Latency and queueing statistics of the message bus, per message type: the time a
+ * message waited in a mailbox, the time its callback ran and the number of messages
+ * ahead of it when it arrived. Callback times are also kept per service, to find the
+ * slow one. Recorded only when enabled through {@link MessageBusControl#enableMetrics()};
+ * otherwise the bus and the services skip recording after a null check.
+ */
+public final class MessageMetrics implements MessageMetricsMXBean {
+    private final ConcurrentHashMap<Class<? extends Message>, TypeMetrics> byType = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> callbackByService = new ConcurrentHashMap<>();
+
+    MessageMetrics() {
+    }
+
+    void recordWait(Class<? extends Message> type, long nanos) {
+        metricsOf(type).waitTimes.record(nanos);
+    }
+
+    void recordDepth(Class<? extends Message> type, int depth) {
+        metricsOf(type).mailboxDepths.record(depth);
+    }
+
+    void recordCallback(Class<? extends Message> type, String serviceName, long nanos) {
+        metricsOf(type).callbackTimes.record(nanos);
+        LatencyHistogram service = callbackByService.get(serviceName);
+        if (service == null) {
+            service = callbackByService.computeIfAbsent(serviceName, name -> new LatencyHistogram());
+        }
+        service.record(nanos);
+    }
+
+    /**
+     * @return nanoseconds from entering a mailbox to being taken by the service, by message type name
+     */
+    public Map<String, LatencyHistogram> getWaitTimes() {
+        return byTypeName(metrics -> metrics.waitTimes);
+    }
+
+    /**
+     * @return nanoseconds spent in the callback, by message type name
+     */
+    public Map<String, LatencyHistogram> getCallbackTimes() {
+        return byTypeName(metrics -> metrics.callbackTimes);
+    }
+
+    /**
+     * @return messages already waiting in the mailbox when a message arrived, by message type name
+     */
+    public Map<String, LatencyHistogram> getMailboxDepths() {
+        return byTypeName(metrics -> metrics.mailboxDepths);
+    }
+
+    /**
+     * @return nanoseconds spent in callbacks, by service name
+     */
+    public Map<String, LatencyHistogram> getServiceCallbackTimes() {
+        return Collections.unmodifiableMap(new TreeMap<>(callbackByService));
+    }
+
+    @Override
+    public Map<String, Long> getMessageCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        getCallbackTimes().forEach((type, histogram) -> counts.put(type, histogram.getCount()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getWaitP99Micros() {
+        return p99Micros(getWaitTimes());
+    }
+
+    @Override
+    public Map<String, Double> getCallbackP99Micros() {
+        return p99Micros(getCallbackTimes());
+    }
+
+    @Override
+    public Map<String, Double> getServiceCallbackP99Micros() {
+        return p99Micros(getServiceCallbackTimes());
+    }
+
+    @Override
+    public Map<String, Double> getServiceCallbackMeanMicros() {
+        Map<String, Double> means = new TreeMap<>();
+        getServiceCallbackTimes().forEach((service, histogram) -> means.put(service, histogram.getMean() / 1000));
+        return means;
+    }
+
+    private TypeMetrics metricsOf(Class<? extends Message> type) {
+        TypeMetrics metrics = byType.get(type);
+        if (metrics == null) {
+            metrics = byType.computeIfAbsent(type, key -> new TypeMetrics());
+        }
+        return metrics;
+    }
+
+    private Map<String, LatencyHistogram> byTypeName(Function<TypeMetrics, LatencyHistogram> histogram) {
+        Map<String, LatencyHistogram> histograms = new TreeMap<>();
+        for (Map.Entry<Class<? extends Message>, TypeMetrics> entry : byType.entrySet()) {
+            histograms.put(entry.getKey().getSimpleName(), histogram.apply(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    private static Map<String, Double> p99Micros(Map<String, LatencyHistogram> histograms) {
+        Map<String, Double> values = new TreeMap<>();
+        histograms.forEach((name, histogram) -> values.put(name, histogram.getValueAtPercentile(99) / 1000.0));
+        return values;
+    }
+
+    private static final class TypeMetrics {
+        private final LatencyHistogram waitTimes = new LatencyHistogram();
+        private final LatencyHistogram callbackTimes = new LatencyHistogram();
+        private final LatencyHistogram mailboxDepths = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,34 @@
+package bgu.spl.mics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link MessageMetrics}, registered as {@code bgu.spl.mics:type=MessageMetrics}
+ * when JMX export is enabled. Values are computed when read.
+ */
+public interface MessageMetricsMXBean {
+    /**
+     * @return messages handled, by message type name
+     */
+    Map<String, Long> getMessageCounts();
+
+    /**
+     * @return the 99th percentile of mailbox wait time in microseconds, by message type name
+     */
+    Map<String, Double> getWaitP99Micros();
+
+    /**
+     * @return the 99th percentile of callback time in microseconds, by message type name
+     */
+    Map<String, Double> getCallbackP99Micros();
+
+    /**
+     * @return the 99th percentile of callback time in microseconds, by service name
+     */
+    Map<String, Double> getServiceCallbackP99Micros();
+
+    /**
+     * @return the mean callback time in microseconds, by service name
+     */
+    Map<String, Double> getServiceCallbackMeanMicros();
+}
@@ -0,0 +1,315 @@
+package bgu.spl.mics;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Appends every message a micro-service takes from its mailbox to a {@link MessageLog}
+ * file, see {@link MessageBusControl#startRecording(MessageRecorder)}. Messages are
+ * recorded on the receiving thread just before the service handles them, so the log
+ * holds each service's messages in the order it handled them. Service names need not
+ * be unique, so services are identified by their position in the list given to the
+ * recorder, and a replay must be given the services in the same order.
+ * <p>
+ * The file is mapped in chunks and written without locks: a sender encodes the payload
+ * into a buffer of its thread, reserves room for the record by advancing an atomic
+ * position, copies the record in and writes its length last. A record is therefore
+ * complete once its length is set, and after a crash the log reads up to the first
+ * record that was not. Messages whose record would not fit in a chunk are counted and
+ * left out.
+ */
+public class MessageRecorder implements Closeable {
+    public static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+    private final MessageLog log;
+    private final FileChannel channel;
+    private final int chunkSize;
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private final AtomicLong position = new AtomicLong(MessageLog.HEADER_SIZE); // Next free byte
+    private final ConcurrentHashMap<String, Short> names = new ConcurrentHashMap<>();
+    private final Map<MicroService, Short> serviceIds = new IdentityHashMap<>(); // Not changed after construction
+    private final long start = System.nanoTime();
+    private volatile int tick = 0;
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final ThreadLocal<Payload> payloads = ThreadLocal.withInitial(Payload::new);
+    private volatile boolean closed = false;
+    private final AtomicInteger writers = new AtomicInteger(); // Threads inside record(), close() waits for them
+
+    public MessageRecorder(String filePath, MessageLog log, List<? extends MicroService> services) throws IOException {
+        this(filePath, log, services, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param filePath  the path of the log, replaced if it exists
+     * @param log       the codecs of the recorded messages
+     * @param services  the services whose messages are recorded, identified by their position
+     * @param chunkSize the size of each mapped chunk, which bounds the size of a record
+     * @throws IOException if the file cannot be created
+     */
+    public MessageRecorder(String filePath, MessageLog log, List<? extends MicroService> services, int chunkSize)
+            throws IOException {
+        if (services.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many services for the message log: " + services.size());
+        }
+        this.log = log;
+        this.chunkSize = chunkSize;
+        channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = chunk(0);
+        header.putInt(0, MessageLog.MAGIC);
+        header.putInt(4, MessageLog.VERSION);
+        header.putInt(8, chunkSize);
+        for (int i = 0; i < services.size(); i++) {
+            serviceIds.put(services.get(i), (short) i);
+            define(MessageLog.SERVICE, (short) i, services.get(i).getName());
+        }
+    }
+
+    /**
+     * Records a message {@code receiver} is about to handle. Services missing from the
+     * recorder's list are written as -1, like a message not sent by a service.
+     *
+     * @param sender the service that sent it, or null if it was not sent by a service
+     */
+    void record(Message message, MicroService sender, MicroService receiver) {
+        writers.incrementAndGet();
+        try {
+            if (!closed) {
+                append(message, sender, receiver);
+            }
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    private void append(Message message, MicroService sender, MicroService receiver) {
+        int messageTick = log.tickOf(message);
+        if (messageTick >= 0) {
+            tick = messageTick;
+        }
+        short type = nameId(message.getClass().getName());
+        short senderId = serviceId(sender);
+        short receiverId = serviceId(receiver);
+        Payload payload = payloads.get();
+        payload.reset();
+        MessageCodec<Message> codec = log.codecOf(message.getClass().getName());
+        if (codec != null) {
+            try {
+                codec.write(message, payload.data);
+            } catch (IOException | RuntimeException e) {
+                payload.reset(); // Record it without its contents
+            }
+        }
+        int size = MessageLog.MESSAGE_HEADER_SIZE + payload.size();
+        long at = reserve(size);
+        if (at < 0) {
+            dropped.increment();
+            return;
+        }
+        // Absolute writes to the shared chunk, the reservation keeps other writers out of the range
+        MappedByteBuffer chunk = chunk((int) (at / chunkSize));
+        int offset = (int) (at % chunkSize);
+        chunk.put(offset + 4, MessageLog.MESSAGE);
+        chunk.putLong(offset + 5, System.nanoTime() - start);
+        chunk.putInt(offset + 13, tick);
+        chunk.putShort(offset + 17, type);
+        chunk.putShort(offset + 19, senderId);
+        chunk.putShort(offset + 21, receiverId);
+        byte[] bytes = payload.bytes();
+        int payloadOffset = offset + MessageLog.MESSAGE_HEADER_SIZE;
+        for (int i = 0, n = payload.size(); i < n; i++) {
+            chunk.put(payloadOffset + i, bytes[i]); // Java 8 has no absolute bulk put
+        }
+        chunk.putInt(offset, size - 4); // Completes the record
+        recorded.increment();
+    }
+
+    /**
+     * @return the number of messages recorded
+     */
+    public long getRecordedCount() {
+        return recorded.sum();
+    }
+
+    /**
+     * @return the number of messages left out because their record did not fit in a chunk
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops recording, flushes the log and cuts the file after its last record.
+     * Messages taken while closing are left out.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        while (writers.get() > 0) {
+            Thread.yield(); // A record being copied in, the file must not shrink under it
+        }
+        for (MappedByteBuffer chunk : chunks) {
+            if (chunk != null) {
+                chunk.force();
+            }
+        }
+        try {
+            channel.truncate(position.get());
+        } catch (IOException e) {
+            // Some platforms cannot shrink a mapped file, the zeros after the last record end the log
+        }
+        channel.close();
+    }
+
+    // Returns the id of the name, writing its definition before the first use
+    private short nameId(String name) {
+        Short id = names.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (names) {
+            id = names.get(name);
+            if (id == null) {
+                if (names.size() >= Short.MAX_VALUE) {
+                    throw new IllegalStateException("Too many names in the message log");
+                }
+                id = (short) names.size();
+                define(MessageLog.NAME, id, name);
+                names.put(name, id); // Only once its definition is in the log
+            }
+            return id;
+        }
+    }
+
+    private short serviceId(MicroService service) {
+        Short id = service == null ? null : serviceIds.get(service);
+        return id == null ? -1 : id;
+    }
+
+    // Writes a name or service record, giving the text its id
+    private void define(byte kind, short id, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int size = 4 + 1 + 2 + bytes.length;
+        long at = reserve(size);
+        if (at < 0) {
+            throw new IllegalStateException("Name too long for the message log: " + text);
+        }
+        ByteBuffer record = slice(at, size);
+        record.put(4, kind);
+        record.putShort(5, id);
+        ((Buffer) record).position(7);
+        record.put(bytes);
+        record.putInt(0, size - 4);
+    }
+
+    // Reserves size bytes within one chunk, padding out the current chunk if they do not fit
+    private long reserve(int size) {
+        if (size > chunkSize - MessageLog.HEADER_SIZE) {
+            return -1;
+        }
+        while (true) {
+            long at = position.get();
+            long offset = at % chunkSize;
+            if (offset + size <= chunkSize) {
+                if (position.compareAndSet(at, at + size)) {
+                    return at;
+                }
+            } else if (position.compareAndSet(at, at - offset + chunkSize)) {
+                if (chunkSize - offset >= 4) {
+                    slice(at, 4).putInt(0, MessageLog.PADDING);
+                }
+            }
+        }
+    }
+
+    // A little-endian view of size bytes of the log starting at position at, within one chunk
+    private ByteBuffer slice(long at, int size) {
+        ByteBuffer view = chunk((int) (at / chunkSize)).duplicate();
+        int offset = (int) (at % chunkSize);
+        ((Buffer) view).position(offset).limit(offset + size);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private MappedByteBuffer chunk(int index) {
+        MappedByteBuffer[] current = chunks;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        synchronized (this) {
+            current = chunks;
+            if (index < current.length && current[index] != null) {
+                return current[index];
+            }
+            MappedByteBuffer chunk;
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * chunkSize, chunkSize);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to extend the message log: " + e.getMessage(), e);
+            }
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            // A new array each time, so readers without the lock see complete ones
+            current = Arrays.copyOf(current, Math.max(index + 1, current.length));
+            current[index] = chunk;
+            chunks = current;
+            return chunk;
+        }
+    }
+
+    // A reusable payload buffer of one thread, unlike ByteArrayOutputStream without a lock per byte
+    private static final class Payload extends OutputStream {
+        private final DataOutputStream data = new DataOutputStream(this);
+        private byte[] buf = new byte[256];
+        private int count;
+
+        @Override
+        public void write(int b) {
+            if (count == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            if (count + length > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + length));
+            }
+            System.arraycopy(bytes, offset, buf, count, length);
+            count += length;
+        }
+
+        private void reset() {
+            count = 0;
+        }
+
+        private int size() {
+            return count;
+        }
+
+        private byte[] bytes() {
+            return buf;
+        }
+    }
+}
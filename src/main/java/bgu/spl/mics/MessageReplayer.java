@@ -0,0 +1,220 @@
+package bgu.spl.mics;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Feeds the messages of a {@link MessageLog} file back to the micro-services on the
+ * calling thread, in the order they were recorded. Every service handles the same
+ * messages in the same order as when they were recorded, one message at a time, so a
+ * replay gives the same results on every run and can be stepped through in a debugger.
+ * <p>
+ * While replaying, the messages the services send are not delivered: the log already
+ * holds the ones that were handled. Services are matched to the log by their position
+ * in the list, which must be the recorder's list or start with it, and the messages of
+ * services that are not replayed, have terminated or have no codec are skipped.
+ */
+public class MessageReplayer {
+    private final String filePath;
+    private final MessageLog log;
+
+    /**
+     * @param filePath the path of the log
+     * @param log      the codecs of the recorded messages
+     */
+    public MessageReplayer(String filePath, MessageLog log) {
+        this.filePath = filePath;
+        this.log = log;
+    }
+
+    /**
+     * Starts the services, replays the log to them and unregisters them.
+     * The services must not be running, and nothing else may use the message bus meanwhile.
+     *
+     * @param services the services to replay to, in the order given to the recorder
+     * @param onTick   called with each tick in order, before the first message stamped with it, or null
+     * @return what was replayed
+     * @throws IOException if the log cannot be read, is not a message log or names other services
+     */
+    public Result replay(List<? extends MicroService> services, IntConsumer onTick) throws IOException {
+        MessageBusControl control = MessageBusControl.getInstance();
+        long start = System.nanoTime();
+        Result result = new Result();
+        control.setReplaying(true);
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            for (MicroService service : services) {
+                service.start();
+            }
+            try {
+                read(channel, services, onTick, result);
+            } finally {
+                for (MicroService service : services) {
+                    service.finish();
+                }
+            }
+        } finally {
+            control.setReplaying(false);
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private void read(FileChannel channel, List<? extends MicroService> services, IntConsumer onTick, Result result)
+            throws IOException {
+        long size = channel.size();
+        ByteBuffer header = map(channel, 0, Math.min(size, MessageLog.HEADER_SIZE));
+        if (header.limit() < MessageLog.HEADER_SIZE || header.getInt(0) != MessageLog.MAGIC) {
+            throw new IOException("Not a message log: " + filePath);
+        }
+        if (header.getInt(4) != MessageLog.VERSION) {
+            throw new IOException("Unsupported message log version " + header.getInt(4) + ": " + filePath);
+        }
+        int chunkSize = header.getInt(8);
+        List<String> names = new ArrayList<>();
+        List<MicroService> receivers = new ArrayList<>();
+        for (int i = 0; i < services.size(); i++) {
+            receivers.add(null); // Until the log lists the service
+        }
+        PayloadInput payload = new PayloadInput();
+        DataInputStream in = new DataInputStream(payload);
+        int lastTick = 0;
+        for (long chunkStart = 0; chunkStart < size; chunkStart += chunkSize) {
+            ByteBuffer chunk = map(channel, chunkStart, Math.min(chunkSize, size - chunkStart));
+            int offset = chunkStart == 0 ? MessageLog.HEADER_SIZE : 0;
+            while (chunk.limit() - offset >= 4) {
+                int length = chunk.getInt(offset);
+                if (length == 0 || offset + 4 + length > chunk.limit()) {
+                    return; // The end of the log, or a record that was never completed
+                }
+                if (length == MessageLog.PADDING) {
+                    break;
+                }
+                byte kind = chunk.get(offset + 4);
+                if (kind == MessageLog.NAME) {
+                    int id = chunk.getShort(offset + 5);
+                    while (names.size() <= id) {
+                        names.add(null);
+                    }
+                    names.set(id, text(chunk, offset, length));
+                } else if (kind == MessageLog.SERVICE) {
+                    int id = chunk.getShort(offset + 5);
+                    String name = text(chunk, offset, length);
+                    if (id < services.size()) {
+                        if (!services.get(id).getName().equals(name)) {
+                            throw new IOException("Service " + id + " was recorded as " + name + ", not "
+                                    + services.get(id).getName() + ": " + filePath);
+                        }
+                        receivers.set(id, services.get(id));
+                    }
+                } else {
+                    // Stamps may run ahead of a slow receiver's messages, so ticks can be skipped
+                    for (int tick = chunk.getInt(offset + 13); lastTick < tick; ) {
+                        lastTick++;
+                        if (onTick != null) {
+                            onTick.accept(lastTick);
+                        }
+                    }
+                    int receiverId = chunk.getShort(offset + 21);
+                    MicroService receiver = receiverId >= 0 && receiverId < receivers.size() ? receivers.get(receiverId) : null;
+                    MessageCodec<Message> codec = log.codecOf(names.get(chunk.getShort(offset + 17)));
+                    if (receiver == null || receiver.isTerminated() || codec == null) {
+                        result.skipped++;
+                    } else {
+                        payload.set(chunk, offset + MessageLog.MESSAGE_HEADER_SIZE, offset + 4 + length);
+                        receiver.dispatch(codec.read(in));
+                        result.dispatched++;
+                    }
+                }
+                offset += 4 + length;
+            }
+        }
+    }
+
+    // The text of a name or service record
+    private static String text(ByteBuffer chunk, int offset, int length) {
+        byte[] text = new byte[length - 3];
+        ((Buffer) chunk).position(offset + 7);
+        chunk.get(text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * The counts of a replay.
+     */
+    public static final class Result {
+        private long dispatched;
+        private long skipped;
+        private long elapsedNanos;
+
+        private Result() {
+        }
+
+        /**
+         * @return the number of messages handled by the services
+         */
+        public long getDispatchedCount() {
+            return dispatched;
+        }
+
+        /**
+         * @return the number of messages whose receiver was not replayed or had terminated,
+         * or whose type has no codec
+         */
+        public long getSkippedCount() {
+            return skipped;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+    // The payload of the current record, read through a DataInputStream by the codecs
+    private static final class PayloadInput extends InputStream {
+        private ByteBuffer buffer;
+        private int position;
+        private int limit;
+
+        private void set(ByteBuffer buffer, int position, int limit) {
+            this.buffer = buffer;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() {
+            return position < limit ? buffer.get(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= limit) {
+                return -1;
+            }
+            int count = Math.min(length, limit - position);
+            ByteBuffer view = buffer.duplicate();
+            ((Buffer) view).position(position);
+            view.get(bytes, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package bgu.spl.mics;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * The MicroService is an abstract class that any micro-service in the system
@@ -19,13 +20,17 @@ import java.util.concurrent.ConcurrentHashMap;
  * 
  * Only private fields and methods may be added to this class.
  * <p>
+ * The exception are the package-private steps of the event loop at the end of the
+ * class, with which {@link MicroServiceExecutor} runs services on a shared pool and
+ * {@link MessageReplayer} feeds them recorded messages on its own thread.
  */
 public abstract class MicroService implements Runnable {
 
-    private boolean terminated = false;
+    private volatile boolean terminated = false; // May be set by a helper thread of the service
+    private final CountDownLatch initialized = new CountDownLatch(1);
     private final String name;
     private final ConcurrentHashMap<Class<? extends Message>, Callback<?>> callbacks = new ConcurrentHashMap<>();
-    private final MessageBus messageBus = MessageBusImpl.getInstance();
+    private final MessageBusImpl messageBus = MessageBusImpl.getInstance();
 
 
     /**
@@ -100,7 +105,7 @@ public abstract class MicroService implements Runnable {
      * 	       			null in case no micro-service has subscribed to {@code e.getClass()}.
      */
     protected final <T> Future<T> sendEvent(Event<T> e) {
-        return messageBus.sendEvent(e);
+        return messageBus.sendEvent(e, this);
     }
 
     /**
@@ -110,7 +115,7 @@ public abstract class MicroService implements Runnable {
      * @param b The broadcast message to send
      */
     protected final void sendBroadcast(Broadcast b) {
-        messageBus.sendBroadcast(b);
+        messageBus.sendBroadcast(b, this);
     }
 
     /**
@@ -154,20 +159,63 @@ public abstract class MicroService implements Runnable {
      */
     @Override
     public final void run() {
-        messageBus.register(this);
-        initialize();
+        start();
         while (!terminated) {
+            Message message;
             try {
-                Message message = messageBus.awaitMessage(this);
-                @SuppressWarnings("unchecked")
-                Callback<Message> callback = (Callback<Message>) callbacks.get(message.getClass());
-                if (callback != null) {
-                    callback.call(message);
-                }
+                message = messageBus.awaitMessage(this);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+                break; // Interrupted while blocked, stop the event loop
+            } catch (IllegalStateException e) {
+                break; // Unregistered while waiting, no more messages will arrive
             }
+            dispatch(message);
         }
+        finish();
+    }
+
+    /*
+     * The steps of the event loop, also used by MicroServiceExecutor to run the
+     * service in bounded batches on a shared pool instead of a dedicated thread.
+     */
+
+    final void start() {
+        try {
+            messageBus.register(this);
+            initialize();
+        } finally {
+            initialized.countDown();
+        }
+    }
+
+    // Waits until start() returned, whether initialize succeeded or not
+    final void awaitInitialized() throws InterruptedException {
+        initialized.await();
+    }
+
+    final void dispatch(Message message) {
+        @SuppressWarnings("unchecked")
+        Callback<Message> callback = (Callback<Message>) callbacks.get(message.getClass());
+        MessageMetrics metrics = MessageBusControl.getInstance().getMetrics();
+        long start = metrics == null ? 0 : System.nanoTime();
+        try {
+            if (callback != null) {
+                callback.call(message);
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.recordCallback(message.getClass(), name, System.nanoTime() - start);
+            }
+            MessageBusControl.getInstance().messageHandled();
+        }
+    }
+
+    final boolean isTerminated() {
+        return terminated;
+    }
+
+    final void finish() {
         messageBus.unregister(this);
     }
 
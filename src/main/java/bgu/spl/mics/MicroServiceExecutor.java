@@ -0,0 +1,221 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Starts micro-services according to an {@link ExecutionMode} and waits for them to terminate.
+ * Whatever the mode, a micro-service handles its messages one at a time and in the order
+ * they were added to its mailbox.
+ */
+public final class MicroServiceExecutor {
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    // Compiled only by the java21 profile, see src/main/java21
+    private static final String VIRTUAL_THREAD_FACTORY = "bgu.spl.mics.VirtualThreadFactory";
+
+    private final ExecutionMode mode;
+    private final int batchSize;
+    private final ThreadFactory threadFactory; // Thread modes only
+    private final ExecutorService pool; // Pool mode only
+    private final List<CompletableFuture<Void>> running = new ArrayList<>();
+    private final List<MicroService> started = new ArrayList<>();
+
+    private MicroServiceExecutor(ExecutionMode mode, ThreadFactory threadFactory, ExecutorService pool, int batchSize) {
+        this.mode = mode;
+        this.threadFactory = threadFactory;
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param mode      how to run the micro-services
+     * @param poolSize  the number of pool threads for {@link ExecutionMode#WORK_STEALING_POOL},
+     *                  or 0 for the number of available processors; ignored by the other modes
+     * @param batchSize the maximal number of messages a pooled service handles before yielding its thread
+     * @return a new executor
+     * @throws UnsupportedOperationException if virtual threads were requested and this build or JVM lacks them
+     */
+    public static MicroServiceExecutor create(ExecutionMode mode, int poolSize, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        switch (mode) {
+            case VIRTUAL_THREADS:
+                return new MicroServiceExecutor(mode, loadVirtualThreadFactory(), null, batchSize);
+            case WORK_STEALING_POOL:
+                int parallelism = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+                ExecutorService pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+                return new MicroServiceExecutor(mode, null, pool, batchSize);
+            default:
+                return new MicroServiceExecutor(mode, Thread::new, null, batchSize);
+        }
+    }
+
+    public ExecutionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Starts running {@code service}: registers it, calls its initialize method and
+     * then delivers its messages until it terminates.
+     *
+     * @param service the micro-service to start
+     */
+    public synchronized void start(MicroService service) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        running.add(done);
+        started.add(service);
+        if (pool != null) {
+            pool.execute(() -> startPooled(service, done));
+        } else {
+            Thread thread = threadFactory.newThread(() -> {
+                try {
+                    service.run();
+                } finally {
+                    done.complete(null);
+                }
+            });
+            thread.setName(service.getName());
+            thread.start();
+        }
+    }
+
+    /**
+     * Waits until every micro-service started so far has registered and run its initialize
+     * method, so that messages sent from now on reach all of their subscriptions.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitInitialized() throws InterruptedException {
+        List<MicroService> services;
+        synchronized (this) {
+            services = new ArrayList<>(started);
+        }
+        for (MicroService service : services) {
+            service.awaitInitialized();
+        }
+    }
+
+    /**
+     * Waits until every micro-service started so far has terminated.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitTermination() throws InterruptedException {
+        List<CompletableFuture<Void>> services;
+        synchronized (this) {
+            services = new ArrayList<>(running);
+        }
+        for (CompletableFuture<Void> done : services) {
+            try {
+                done.get();
+            } catch (ExecutionException e) {
+                // A failed service counts as terminated
+            }
+        }
+    }
+
+    /**
+     * Releases the pool threads. Services that are still running in pool mode stop being scheduled.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private void startPooled(MicroService service, CompletableFuture<Void> done) {
+        PooledService pooled;
+        try {
+            service.start();
+            if (service.isTerminated()) {
+                finishPooled(service, done);
+                return;
+            }
+            pooled = new PooledService(service, MessageBusImpl.getInstance().getMailbox(service), done);
+        } catch (RuntimeException e) {
+            done.completeExceptionally(e);
+            throw e;
+        }
+        pooled.mailbox.setDeliveryListener(pooled::schedule);
+        pooled.schedule(); // Messages may have arrived before the listener was set
+    }
+
+    private void drain(PooledService pooled) {
+        MicroService service = pooled.service;
+        try {
+            int handled = 0;
+            while (!service.isTerminated() && handled < batchSize) {
+                Message message;
+                try {
+                    message = pooled.mailbox.poll();
+                } catch (IllegalStateException e) {
+                    service.terminate(); // Unregistered from outside, nothing more will arrive
+                    break;
+                }
+                if (message == null) {
+                    break;
+                }
+                service.dispatch(message);
+                handled++;
+            }
+        } catch (RuntimeException e) {
+            finishPooled(service, pooled.done); // A failing callback stops the service, as on its own thread
+            throw e;
+        }
+        if (service.isTerminated()) {
+            finishPooled(service, pooled.done);
+            return;
+        }
+        pooled.scheduled.set(false);
+        if (!pooled.mailbox.isEmpty()) {
+            pooled.schedule(); // Yield the thread and come back for the rest
+        }
+    }
+
+    private static void finishPooled(MicroService service, CompletableFuture<Void> done) {
+        try {
+            service.finish();
+        } finally {
+            done.complete(null);
+        }
+    }
+
+    private static ThreadFactory loadVirtualThreadFactory() {
+        try {
+            return (ThreadFactory) Class.forName(VIRTUAL_THREAD_FACTORY).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new UnsupportedOperationException("Virtual threads need a build from the java21 profile running on Java 21 or newer", e);
+        }
+    }
+
+    /**
+     * A micro-service running on the pool. At most one drain task per service is
+     * scheduled at any time, which keeps its messages handled in order.
+     */
+    private final class PooledService {
+        private final MicroService service;
+        private final Mailbox mailbox;
+        private final CompletableFuture<Void> done;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private PooledService(MicroService service, Mailbox mailbox, CompletableFuture<Void> done) {
+            this.service = service;
+            this.mailbox = mailbox;
+            this.done = done;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                pool.execute(() -> drain(this));
+            }
+        }
+    }
+}
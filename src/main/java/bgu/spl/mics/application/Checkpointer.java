@@ -0,0 +1,94 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.Log;
+import bgu.spl.mics.application.objects.Camera;
+import bgu.spl.mics.application.objects.Checkpoint;
+import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.GPSIMU;
+import bgu.spl.mics.application.objects.LiDarDataBase;
+import bgu.spl.mics.application.objects.LiDarWorkerTracker;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes checkpoints for the TimeService's clock. What changed since the previous
+ * checkpoint is copied on the clock thread while the services are idle, so the clock
+ * pauses for the landmarks that changed rather than the whole map. A background thread
+ * applies each capture in turn to a whole checkpoint of its own and writes it to disk
+ * while the simulation goes on. If a write is still running when more checkpoints are
+ * taken, they are all applied after it and only the newest is written.
+ */
+final class Checkpointer {
+    private final String filePath;
+    private final FusionSlam fusionSlam;
+    private final List<Camera> cameras;
+    private final List<LiDarWorkerTracker> lidars;
+    private final LiDarDataBase dataBase;
+    private final GPSIMU gpsimu;
+    private final Queue<Checkpoint> captured = new ConcurrentLinkedQueue<>();
+    private final Checkpoint checkpoint; // Used by the writer thread only
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Must be created before the services start and after the state is restored, if it is.
+     *
+     * @param restored the checkpoint the state was restored from, or null
+     */
+    Checkpointer(String filePath, FusionSlam fusionSlam, List<Camera> cameras, List<LiDarWorkerTracker> lidars,
+                 LiDarDataBase dataBase, GPSIMU gpsimu, Checkpoint restored) {
+        this.checkpoint = restored == null ? Checkpoint.empty() : restored;
+        Checkpoint.trackChanges(fusionSlam, dataBase);
+        this.filePath = filePath;
+        this.fusionSlam = fusionSlam;
+        this.cameras = cameras;
+        this.lidars = lidars;
+        this.dataBase = dataBase;
+        this.gpsimu = gpsimu;
+    }
+
+    /**
+     * Captures the state after {@code tick} and queues it for writing.
+     * Must be called while no service is handling a message.
+     */
+    void checkpoint(int tick) {
+        captured.add(Checkpoint.capture(tick, fusionSlam, StatisticalFolder.getInstance(), cameras, lidars, dataBase,
+                gpsimu));
+        writer.execute(this::writeCaptured);
+    }
+
+    /**
+     * Waits for the checkpoints taken so far to be written.
+     */
+    void close() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    // Every capture must be applied in order; the write after the last one covers them all
+    private void writeCaptured() {
+        Checkpoint changes = captured.poll();
+        if (changes == null) {
+            return; // Applied and written by an earlier call
+        }
+        for (; changes != null; changes = captured.poll()) {
+            checkpoint.update(changes);
+        }
+        try {
+            checkpoint.write(filePath);
+            Log.info(() -> "Checkpoint of tick " + checkpoint.getTick() + " written");
+        } catch (IOException e) {
+            Log.warn("Failed to write the checkpoint of tick " + checkpoint.getTick() + ": " + e.getMessage());
+        }
+    }
+}
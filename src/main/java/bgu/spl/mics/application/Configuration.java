@@ -0,0 +1,416 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.ExecutionMode;
+import bgu.spl.mics.LogLevel;
+import bgu.spl.mics.Mailbox;
+import bgu.spl.mics.MailboxPolicy;
+import bgu.spl.mics.MicroServiceExecutor;
+import bgu.spl.mics.application.objects.CloudPointStorage;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The contents of the simulation configuration file.
+ * Paths to the data files are resolved relative to the directory of the configuration file.
+ */
+public class Configuration {
+    @SerializedName("Cameras")
+    private CamerasConfiguration cameras;
+    @SerializedName(value = "LidarWorkers", alternate = {"Lidars"})
+    private LidarsConfiguration lidarWorkers;
+    @SerializedName("poseJsonFile")
+    private String poseJsonFile;
+    @SerializedName("TickTime")
+    private int tickTime;
+    @SerializedName("Duration")
+    private int duration;
+    // Optional, sends each tick as soon as the previous one was fully handled instead of sleeping TickTime
+    @SerializedName("FastForward")
+    private boolean fastForward;
+    // Optional, keyed by service name; the key "default" applies to every other service
+    @SerializedName("Mailboxes")
+    private Map<String, MailboxConfiguration> mailboxes;
+    // Optional, platform threads when missing
+    @SerializedName("Execution")
+    private ExecutionConfiguration execution;
+    // Optional, message latency histograms are off when missing
+    @SerializedName("Metrics")
+    private MetricsConfiguration metrics;
+    // Optional, no snapshots when missing
+    @SerializedName("Output")
+    private OutputConfiguration output;
+    // Optional, no checkpoints when missing
+    @SerializedName("Checkpoint")
+    private CheckpointConfiguration checkpoint;
+    // Optional, messages are neither recorded nor replayed when missing
+    @SerializedName("Recording")
+    private RecordingConfiguration recording;
+    // Optional, INFO when missing; DEBUG also logs every tick and event
+    @SerializedName("LogLevel")
+    private LogLevel logLevel;
+
+    private transient File baseDirectory;
+
+    /**
+     * Parses the configuration file at {@code filePath}.
+     *
+     * @param filePath the path to the configuration file
+     * @return the parsed configuration
+     * @throws IOException if the file cannot be read or is not a valid configuration
+     */
+    public static Configuration load(String filePath) throws IOException {
+        File file = new File(filePath).getAbsoluteFile();
+        Configuration configuration;
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            configuration = new Gson().fromJson(reader, Configuration.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid configuration file " + filePath + ": " + e.getMessage(), e);
+        }
+        if (configuration == null) {
+            throw new IOException("Empty configuration file " + filePath);
+        }
+        configuration.baseDirectory = file.getParentFile();
+        return configuration;
+    }
+
+    public List<CameraConfiguration> getCameras() {
+        if (cameras == null || cameras.configurations == null) {
+            return Collections.emptyList();
+        }
+        return cameras.configurations;
+    }
+
+    public String getCameraDataPath() {
+        return cameras == null ? null : resolve(cameras.dataPath);
+    }
+
+    public List<LidarConfiguration> getLidarWorkers() {
+        if (lidarWorkers == null || lidarWorkers.configurations == null) {
+            return Collections.emptyList();
+        }
+        return lidarWorkers.configurations;
+    }
+
+    public String getLidarDataPath() {
+        return lidarWorkers == null ? null : resolve(lidarWorkers.dataPath);
+    }
+
+    public CloudPointStorage.Kind getLidarPointsStorage() {
+        if (lidarWorkers == null || lidarWorkers.pointsStorage == null) {
+            return CloudPointStorage.Kind.HEAP_DOUBLE;
+        }
+        return lidarWorkers.pointsStorage;
+    }
+
+    /**
+     * @return the most ticks between a detection and its tracked object: the largest
+     * camera frequency plus the largest LiDAR frequency
+     */
+    public int getMaxSensorDelay() {
+        int camera = 0;
+        for (CameraConfiguration configuration : getCameras()) {
+            camera = Math.max(camera, configuration.getFrequency());
+        }
+        int lidar = 0;
+        for (LidarConfiguration configuration : getLidarWorkers()) {
+            lidar = Math.max(lidar, configuration.getFrequency());
+        }
+        return camera + lidar;
+    }
+
+    public boolean isLidarParallelTracking() {
+        return lidarWorkers != null && lidarWorkers.parallelTracking;
+    }
+
+    public boolean isLidarTimeOrdered() {
+        return lidarWorkers != null && lidarWorkers.timeOrdered;
+    }
+
+    public String getPoseDataPath() {
+        return resolve(poseJsonFile);
+    }
+
+    public int getTickTime() {
+        return tickTime;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public boolean isFastForward() {
+        return fastForward;
+    }
+
+    public Map<String, MailboxConfiguration> getMailboxes() {
+        return mailboxes == null ? Collections.emptyMap() : mailboxes;
+    }
+
+    public ExecutionConfiguration getExecution() {
+        return execution == null ? new ExecutionConfiguration() : execution;
+    }
+
+    public MetricsConfiguration getMetrics() {
+        return metrics == null ? new MetricsConfiguration() : metrics;
+    }
+
+    public OutputConfiguration getOutput() {
+        return output == null ? new OutputConfiguration() : output;
+    }
+
+    /**
+     * @return the path of output.json, next to the configuration file
+     */
+    public String getOutputPath() {
+        return resolve(OutputConfiguration.OUTPUT_FILE);
+    }
+
+    /**
+     * @return the path of the snapshot file, next to the output file unless configured otherwise
+     */
+    public String getSnapshotPath() {
+        return resolve(getOutput().snapshotFile == null ? OutputConfiguration.DEFAULT_SNAPSHOT_FILE : getOutput().snapshotFile);
+    }
+
+    /**
+     * @return the path of the statistics file, next to the output file unless configured otherwise
+     */
+    public String getStatisticsPath() {
+        return resolve(getOutput().statisticsFile == null ? OutputConfiguration.DEFAULT_STATISTICS_FILE : getOutput().statisticsFile);
+    }
+
+    public CheckpointConfiguration getCheckpoint() {
+        return checkpoint == null ? new CheckpointConfiguration() : checkpoint;
+    }
+
+    /**
+     * @return the path of the checkpoint file, next to the output file unless configured otherwise
+     */
+    public String getCheckpointPath() {
+        return resolve(getCheckpoint().file == null ? CheckpointConfiguration.DEFAULT_FILE : getCheckpoint().file);
+    }
+
+    public RecordingConfiguration getRecording() {
+        return recording == null ? new RecordingConfiguration() : recording;
+    }
+
+    /**
+     * @return the path of the message log, next to the output file unless configured otherwise
+     */
+    public String getRecordingPath() {
+        return resolve(getRecording().file == null ? RecordingConfiguration.DEFAULT_FILE : getRecording().file);
+    }
+
+    public LogLevel getLogLevel() {
+        return logLevel == null ? LogLevel.INFO : logLevel;
+    }
+
+    /**
+     * @return the path of the metrics file, next to the output file unless configured otherwise
+     */
+    public String getMetricsPath() {
+        return resolve(getMetrics().file == null ? MetricsConfiguration.DEFAULT_FILE : getMetrics().file);
+    }
+
+    /**
+     * @return the directory containing the configuration file
+     */
+    public File getBaseDirectory() {
+        return baseDirectory;
+    }
+
+    private String resolve(String path) {
+        if (path == null) {
+            return null;
+        }
+        return Paths.get(baseDirectory.getPath()).resolve(path).normalize().toString();
+    }
+
+    private static class CamerasConfiguration {
+        @SerializedName("CamerasConfigurations")
+        private List<CameraConfiguration> configurations;
+        @SerializedName("camera_datas_path")
+        private String dataPath;
+    }
+
+    private static class LidarsConfiguration {
+        @SerializedName("LidarConfigurations")
+        private List<LidarConfiguration> configurations;
+        @SerializedName("lidars_data_path")
+        private String dataPath;
+        // Optional, how the cloud points are kept in memory
+        @SerializedName("points_storage")
+        private CloudPointStorage.Kind pointsStorage;
+        // Optional, converts the objects of large detection events on the common ForkJoinPool
+        @SerializedName("parallel_tracking")
+        private boolean parallelTracking;
+        // Optional, promises the JSON records are ordered by time so lookups need not wait for the whole file
+        @SerializedName("time_ordered")
+        private boolean timeOrdered;
+    }
+
+    public static class CameraConfiguration {
+        private int id;
+        private int frequency;
+        @SerializedName("camera_key")
+        private String cameraKey;
+
+        public int getId() {
+            return id;
+        }
+
+        public int getFrequency() {
+            return frequency;
+        }
+
+        public String getCameraKey() {
+            return cameraKey;
+        }
+    }
+
+    public static class LidarConfiguration {
+        private int id;
+        private int frequency;
+
+        public int getId() {
+            return id;
+        }
+
+        public int getFrequency() {
+            return frequency;
+        }
+    }
+
+    /**
+     * Mailbox settings of a single service. A missing or zero capacity means unbounded.
+     */
+    public static class MailboxConfiguration {
+        private int capacity = Mailbox.UNBOUNDED;
+        private MailboxPolicy policy = MailboxPolicy.BLOCK;
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public MailboxPolicy getPolicy() {
+            return policy == null ? MailboxPolicy.BLOCK : policy;
+        }
+    }
+
+    /**
+     * How the services are run, see {@link ExecutionMode}.
+     * A missing or zero pool size means one pool thread per available processor.
+     */
+    public static class ExecutionConfiguration {
+        private ExecutionMode mode = ExecutionMode.PLATFORM_THREADS;
+        private int poolSize = 0;
+        private int batchSize = MicroServiceExecutor.DEFAULT_BATCH_SIZE;
+
+        public ExecutionMode getMode() {
+            return mode == null ? ExecutionMode.PLATFORM_THREADS : mode;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+    }
+
+    /**
+     * Whether to record per message type latency histograms, written to a JSON file at
+     * shutdown and optionally exposed through JMX while running.
+     */
+    public static class MetricsConfiguration {
+        static final String DEFAULT_FILE = "metrics.json";
+
+        private boolean enabled = false;
+        private boolean jmx = false;
+        private String file;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public boolean isJmx() {
+            return jmx;
+        }
+    }
+
+    /**
+     * Whether to write incremental snapshots of the map every {@code snapshotInterval} ticks
+     * while running, see {@link SnapshotWriter}. A missing or zero interval means none.
+     * The bus statistics are written next to output.json, see {@link StatisticsWriter}.
+     */
+    public static class OutputConfiguration {
+        static final String OUTPUT_FILE = "output.json";
+        static final String DEFAULT_SNAPSHOT_FILE = "output_snapshots.jsonl";
+        static final String DEFAULT_STATISTICS_FILE = "statistics.json";
+
+        private int snapshotInterval = 0;
+        private String snapshotFile;
+        private String statisticsFile;
+
+        public int getSnapshotInterval() {
+            return snapshotInterval;
+        }
+    }
+
+    /**
+     * Whether to save the state of the simulation every {@code interval} ticks, and whether
+     * to continue from the saved state when the file exists. A missing or zero interval
+     * means no checkpoints.
+     */
+    public static class CheckpointConfiguration {
+        static final String DEFAULT_FILE = "checkpoint.bin";
+
+        private int interval = 0;
+        private String file;
+        private boolean resume = false;
+
+        public int getInterval() {
+            return interval;
+        }
+
+        public boolean isResume() {
+            return resume;
+        }
+    }
+
+    /**
+     * Whether to record the messages the services handle to a message log, or to replay a
+     * recorded log to the services instead of running the clock, see {@link MessageCodecs}.
+     */
+    public static class RecordingConfiguration {
+        static final String DEFAULT_FILE = "messages.log";
+
+        /**
+         * What to do with the message log.
+         */
+        public enum Mode {
+            OFF,
+            RECORD,
+            REPLAY
+        }
+
+        private Mode mode = Mode.OFF;
+        private String file;
+
+        public Mode getMode() {
+            return mode == null ? Mode.OFF : mode;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package bgu.spl.mics.application;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Writes a synthetic input set for load testing: configuration_file.json,
+ * camera_data.json, lidar_data.json and pose_data.json in one directory, which
+ * GurionRockRunner can run as is.
+ * <p>
+ * The landmarks are objects of a few points each, scattered over a square. The robot
+ * drives a smooth path, and at every frame each camera detects some landmarks of its
+ * own share of the map, so no object is detected twice at the same time. The LiDAR
+ * records hold the points of those landmarks in the robot's frame at that time, so the
+ * map FusionSlam builds matches the generated one up to the noise.
+ * <p>
+ * Everything is derived from the seed per landmark and per frame, so the files are
+ * written one record at a time and their size is not limited by memory; only the poses
+ * are kept.
+ */
+public class DatasetGenerator {
+    private static final String[] DESCRIPTIONS = {"Wall", "Door", "Chair", "Table", "Pillar", "Cabinet"};
+    private static final double LANDMARK_SPACING = 2.0; // Meters of map per landmark, along each axis
+    private static final double LANDMARK_SIZE = 0.5; // Length of a landmark, in meters
+    private static final double STEP = 0.5; // Meters the robot drives per tick
+    private static final double LIDAR_HEIGHT = 0.104;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final File directory;
+    private final int cameras;
+    private final int[] cameraFrequencies;
+    private final int lidars;
+    private final int[] lidarFrequencies;
+    private final int duration;
+    private final int frameInterval;
+    private final int objectsPerFrame;
+    private final int pointsPerObject;
+    private final int landmarks;
+    private final double noise;
+    private final long seed;
+    private final boolean fastForward;
+
+    private final double mapSize;
+    private float[] poseX;
+    private float[] poseY;
+    private float[] poseYaw;
+
+    /**
+     * Generates a data set into the directory given by {@code --output}. Every other
+     * option has a default; frequencies are lists, given to the sensors in turn.
+     *
+     * @param args pairs of an option and its value
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        if (args.length % 2 != 0 || !options.containsKey("--output")) {
+            System.err.println("Usage: DatasetGenerator --output <directory> [--cameras 2] [--camera-frequencies 1,2]"
+                    + " [--lidars 2] [--lidar-frequencies 2,4] [--duration 1000] [--frame-interval 1]"
+                    + " [--objects-per-frame 10] [--points-per-object 16] [--landmarks 10000] [--noise 0.01]"
+                    + " [--seed 1] [--fast-forward true]");
+            return;
+        }
+        DatasetGenerator generator;
+        try {
+            generator = new DatasetGenerator(new File(options.get("--output")),
+                    integer(options, "--cameras", 2), integers(options, "--camera-frequencies", "1,2"),
+                    integer(options, "--lidars", 2), integers(options, "--lidar-frequencies", "2,4"),
+                    integer(options, "--duration", 1000), integer(options, "--frame-interval", 1),
+                    integer(options, "--objects-per-frame", 10), integer(options, "--points-per-object", 16),
+                    integer(options, "--landmarks", 10000), Double.parseDouble(options.getOrDefault("--noise", "0.01")),
+                    Long.parseLong(options.getOrDefault("--seed", "1")),
+                    Boolean.parseBoolean(options.getOrDefault("--fast-forward", "true")));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid option: " + e.getMessage());
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            generator.generate();
+            System.out.println("Generated " + options.get("--output") + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            System.err.println("Failed to generate the data set: " + e.getMessage());
+        }
+    }
+
+    public DatasetGenerator(File directory, int cameras, int[] cameraFrequencies, int lidars, int[] lidarFrequencies,
+                            int duration, int frameInterval, int objectsPerFrame, int pointsPerObject, int landmarks,
+                            double noise, long seed, boolean fastForward) {
+        if (cameras < 1 || lidars < 1 || duration < 1 || frameInterval < 1 || pointsPerObject < 1 || objectsPerFrame < 0) {
+            throw new IllegalArgumentException("Counts must be positive");
+        }
+        if (landmarks < cameras) {
+            throw new IllegalArgumentException("Every camera needs at least one landmark");
+        }
+        if (cameraFrequencies.length == 0 || lidarFrequencies.length == 0) {
+            throw new IllegalArgumentException("Frequencies must not be empty");
+        }
+        this.directory = directory;
+        this.cameras = cameras;
+        this.cameraFrequencies = cameraFrequencies;
+        this.lidars = lidars;
+        this.lidarFrequencies = lidarFrequencies;
+        this.duration = duration;
+        this.frameInterval = frameInterval;
+        this.objectsPerFrame = Math.min(objectsPerFrame, landmarks / cameras); // Distinct objects in a frame
+        this.pointsPerObject = pointsPerObject;
+        this.landmarks = landmarks;
+        this.noise = noise;
+        this.seed = seed;
+        this.fastForward = fastForward;
+        this.mapSize = Math.sqrt(landmarks) * LANDMARK_SPACING;
+    }
+
+    /**
+     * Writes the four files, replacing existing ones.
+     *
+     * @throws IOException if a file cannot be written
+     */
+    public void generate() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        writePoses(new File(directory, "pose_data.json"));
+        writeCameras(new File(directory, "camera_data.json"));
+        writeLidar(new File(directory, "lidar_data.json"));
+        writeConfiguration(new File(directory, "configuration_file.json"));
+    }
+
+    // The robot drives around the map with a slowly turning heading, bouncing off its edges
+    private void writePoses(File file) throws IOException {
+        poseX = new float[duration + 1];
+        poseY = new float[duration + 1];
+        poseYaw = new float[duration + 1];
+        SplittableRandom random = new SplittableRandom(seed);
+        double x = mapSize / 2;
+        double y = mapSize / 2;
+        double yaw = 0;
+        try (Writer out = open(file)) {
+            out.write('[');
+            for (int time = 1; time <= duration; time++) {
+                // Rounded as the simulation reads them, so the LiDAR points match what it computes
+                poseX[time] = (float) x;
+                poseY[time] = (float) y;
+                poseYaw[time] = (float) yaw;
+                out.write(time == 1 ? "{\"time\":" : ",{\"time\":");
+                out.write(time + ",\"x\":" + poseX[time] + ",\"y\":" + poseY[time] + ",\"yaw\":" + poseYaw[time] + "}");
+                yaw += random.nextDouble(-5, 5);
+                double radians = Math.toRadians(yaw);
+                x += STEP * Math.cos(radians);
+                y += STEP * Math.sin(radians);
+                if (x < 0 || x > mapSize || y < 0 || y > mapSize) {
+                    yaw += 180;
+                    x = Math.max(0, Math.min(mapSize, x));
+                    y = Math.max(0, Math.min(mapSize, y));
+                }
+                yaw = ((yaw + 180) % 360 + 360) % 360 - 180;
+            }
+            out.write(']');
+        }
+    }
+
+    private void writeCameras(File file) throws IOException {
+        int[] objects = new int[objectsPerFrame];
+        try (Writer out = open(file)) {
+            out.write('{');
+            for (int camera = 0; camera < cameras; camera++) {
+                out.write(camera == 0 ? "" : ",");
+                out.write("\"camera" + (camera + 1) + "\":[");
+                boolean first = true;
+                for (int time = 1; time <= duration; time += frameInterval) {
+                    out.write(first ? "{\"time\":" : ",{\"time\":");
+                    first = false;
+                    out.write(time + ",\"detectedObjects\":[");
+                    detectedLandmarks(camera, time, objects);
+                    for (int i = 0; i < objects.length; i++) {
+                        out.write(i == 0 ? "{\"id\":\"" : ",{\"id\":\"");
+                        out.write(landmarkId(objects[i]) + "\",\"description\":\"" + description(objects[i]) + "\"}");
+                    }
+                    out.write("]}");
+                }
+                out.write(']');
+            }
+            out.write('}');
+        }
+    }
+
+    // In time order, as a recording would be
+    private void writeLidar(File file) throws IOException {
+        int[] objects = new int[objectsPerFrame];
+        double[] x = new double[pointsPerObject];
+        double[] y = new double[pointsPerObject];
+        boolean first = true;
+        try (Writer out = open(file)) {
+            out.write('[');
+            for (int time = 1; time <= duration; time += frameInterval) {
+                double radians = Math.toRadians(poseYaw[time]);
+                double cos = Math.cos(radians);
+                double sin = Math.sin(radians);
+                for (int camera = 0; camera < cameras; camera++) {
+                    detectedLandmarks(camera, time, objects);
+                    for (int object : objects) {
+                        landmarkPoints(object, x, y);
+                        SplittableRandom random = new SplittableRandom(mix(seed, object, time));
+                        out.write(first ? "{\"time\":" : ",{\"time\":");
+                        first = false;
+                        out.write(time + ",\"id\":\"" + landmarkId(object) + "\",\"cloudPoints\":[");
+                        for (int point = 0; point < pointsPerObject; point++) {
+                            // The inverse of the transform FusionSlam applies with the pose
+                            double dx = x[point] - poseX[time];
+                            double dy = y[point] - poseY[time];
+                            double localX = cos * dx + sin * dy + noise * (2 * random.nextDouble() - 1);
+                            double localY = -sin * dx + cos * dy + noise * (2 * random.nextDouble() - 1);
+                            out.write(point == 0 ? "[" : ",[");
+                            out.write(localX + "," + localY + "," + LIDAR_HEIGHT + "]");
+                        }
+                        out.write("]}");
+                    }
+                }
+            }
+            out.write(']');
+        }
+    }
+
+    private void writeConfiguration(File file) throws IOException {
+        try (Writer out = open(file)) {
+            out.write("{\n  \"Cameras\": {\n    \"CamerasConfigurations\": [");
+            for (int camera = 0; camera < cameras; camera++) {
+                out.write(camera == 0 ? "\n" : ",\n");
+                out.write("      {\"id\": " + (camera + 1) + ", \"frequency\": " + cameraFrequencies[camera % cameraFrequencies.length]
+                        + ", \"camera_key\": \"camera" + (camera + 1) + "\"}");
+            }
+            out.write("\n    ],\n    \"camera_datas_path\": \"./camera_data.json\"\n  },\n");
+            out.write("  \"LidarWorkers\": {\n    \"LidarConfigurations\": [");
+            for (int lidar = 0; lidar < lidars; lidar++) {
+                out.write(lidar == 0 ? "\n" : ",\n");
+                out.write("      {\"id\": " + (lidar + 1) + ", \"frequency\": " + lidarFrequencies[lidar % lidarFrequencies.length] + "}");
+            }
+            out.write("\n    ],\n    \"lidars_data_path\": \"./lidar_data.json\",\n    \"time_ordered\": true\n  },\n");
+            out.write("  \"poseJsonFile\": \"./pose_data.json\",\n");
+            out.write("  \"TickTime\": 1,\n  \"Duration\": " + duration + ",\n");
+            out.write("  \"FastForward\": " + fastForward + "\n}\n");
+        }
+    }
+
+    // Consecutive landmarks of the camera's share, from a random one: distinct, and never another camera's
+    private void detectedLandmarks(int camera, int time, int[] objects) {
+        int share = (landmarks - camera + cameras - 1) / cameras; // Landmarks camera, camera + cameras, ...
+        int first = new SplittableRandom(mix(seed, -1 - camera, time)).nextInt(share);
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = camera + ((first + i) % share) * cameras;
+        }
+    }
+
+    // A short segment of points at a random place and direction, the same every time it is asked for
+    private void landmarkPoints(int landmark, double[] x, double[] y) {
+        SplittableRandom random = new SplittableRandom(mix(seed, landmark, 0));
+        double centerX = random.nextDouble() * mapSize;
+        double centerY = random.nextDouble() * mapSize;
+        double direction = random.nextDouble() * 2 * Math.PI;
+        double stepX = Math.cos(direction) * LANDMARK_SIZE / Math.max(1, x.length - 1);
+        double stepY = Math.sin(direction) * LANDMARK_SIZE / Math.max(1, x.length - 1);
+        for (int point = 0; point < x.length; point++) {
+            x[point] = centerX + (point - (x.length - 1) / 2.0) * stepX;
+            y[point] = centerY + (point - (x.length - 1) / 2.0) * stepY;
+        }
+    }
+
+    private static String landmarkId(int landmark) {
+        return "Landmark_" + landmark;
+    }
+
+    private static String description(int landmark) {
+        return DESCRIPTIONS[landmark % DESCRIPTIONS.length];
+    }
+
+    private static long mix(long seed, long a, long b) {
+        return seed * 0x9E3779B97F4A7C15L + a * 0xC2B2AE3D27D4EB4FL + b * 0x165667B19E3779F9L;
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private static int integer(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static int[] integers(Map<String, String> options, String name, String defaultValue) {
+        String[] values = options.getOrDefault(name, defaultValue).split(",");
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = Integer.parseInt(values[i].trim());
+        }
+        return result;
+    }
+}
@@ -1,26 +1,281 @@
-package bgu.spl.mics.application;
-
-/**
- * The main entry point for the GurionRock Pro Max Ultra Over 9000 simulation.
- * <p>
- * This class initializes the system and starts the simulation by setting up
- * services, objects, and configurations.
- * </p>
- */
-public class GurionRockRunner {
-
-    /**
-     * The main method of the simulation.
-     * This method sets up the necessary components, parses configuration files,
-     * initializes services, and starts the simulation.
-     *
-     * @param args Command-line arguments. The first argument is expected to be the path to the configuration file.
-     */
-    public static void main(String[] args) {
-        System.out.println("Hello World!");
-
-        // TODO: Parse configuration file.
-        // TODO: Initialize system components and services.
-        // TODO: Start the simulation.
-    }
-}
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.Log;
+import bgu.spl.mics.MessageBusControl;
+import bgu.spl.mics.MessageMetrics;
+import bgu.spl.mics.MessageRecorder;
+import bgu.spl.mics.MessageReplayer;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.MicroServiceExecutor;
+import bgu.spl.mics.application.objects.Camera;
+import bgu.spl.mics.application.objects.Checkpoint;
+import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.GPSIMU;
+import bgu.spl.mics.application.objects.LiDarDataBase;
+import bgu.spl.mics.application.objects.LiDarWorkerTracker;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.services.CameraService;
+import bgu.spl.mics.application.services.FusionSlamService;
+import bgu.spl.mics.application.services.LiDarService;
+import bgu.spl.mics.application.services.PoseService;
+import bgu.spl.mics.application.services.TimeService;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The main entry point for the GurionRock Pro Max Ultra Over 9000 simulation.
+ * <p>
+ * This class initializes the system and starts the simulation by setting up
+ * services, objects, and configurations.
+ * </p>
+ */
+public class GurionRockRunner {
+    private static final String METRICS_MBEAN_NAME = "bgu.spl.mics:type=MessageMetrics";
+    // How far the services may fall behind a real-time clock and still fuse objects in time order.
+    // A best-effort bound: objects that arrive later are fused out of order and counted, see FusionSlamService
+    private static final int REAL_TIME_LAG_MS = 1000;
+
+    /**
+     * The main method of the simulation.
+     * This method sets up the necessary components, parses configuration files,
+     * initializes services, and starts the simulation.
+     *
+     * @param args Command-line arguments. The first argument is expected to be the path to the configuration file.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: GurionRockRunner <configuration file>");
+            return;
+        }
+        try {
+            run(args[0]);
+        } finally {
+            Log.flush(); // The writer is a daemon thread
+        }
+    }
+
+    private static void run(String configurationPath) {
+        Configuration configuration;
+        try {
+            configuration = Configuration.load(configurationPath);
+        } catch (IOException e) {
+            Log.error("Failed to read configuration: " + e.getMessage());
+            return;
+        }
+        Log.setLevel(configuration.getLogLevel());
+        configureMailboxes(configuration);
+        Configuration.RecordingConfiguration.Mode recording = configuration.getRecording().getMode();
+        boolean replay = recording == Configuration.RecordingConfiguration.Mode.REPLAY;
+        // A replay starts from the beginning and runs no clock, a recording must cover the whole run
+        int checkpointInterval = replay ? 0 : configuration.getCheckpoint().getInterval();
+        boolean resume = configuration.getCheckpoint().isResume() && recording == Configuration.RecordingConfiguration.Mode.OFF;
+        if (!replay && (configuration.isFastForward() || checkpointInterval > 0)) {
+            MessageBusControl.getInstance().enableIdleTracking(); // The TimeService waits for idle between ticks
+        }
+        MessageMetrics metrics = enableMetrics(configuration);
+        MicroServiceExecutor executor;
+        try {
+            executor = createExecutor(configuration);
+        } catch (UnsupportedOperationException e) {
+            Log.error(e.getMessage());
+            return;
+        }
+
+        // Start streaming the LiDAR recording while the rest is set up
+        LiDarDataBase dataBase = LiDarDataBase.getInstance(configuration.getLidarDataPath(), configuration.getLidarPointsStorage(),
+                configuration.isLidarTimeOrdered());
+        GPSIMU gpsimu;
+        try {
+            gpsimu = GPSIMU.load(configuration.getPoseDataPath());
+        } catch (IOException e) {
+            Log.error("Failed to read pose data: " + e.getMessage());
+            executor.shutdown();
+            return;
+        }
+        StatisticalFolder.getInstance().addMessageBusSource(MessageBusControl.getInstance());
+        FusionSlam fusionSlam = FusionSlam.getInstance();
+        // Fusing objects in time order gives the same map in every fast-forward run, and in real time
+        // as long as no object arrives late. The extra real-time delay holds fusion and snapshots back by as many ticks
+        int fusionDelay = configuration.getMaxSensorDelay();
+        if (!configuration.isFastForward()) {
+            int tickTime = Math.max(configuration.getTickTime(), 1);
+            fusionDelay += (REAL_TIME_LAG_MS + tickTime - 1) / tickTime;
+        }
+        fusionSlam.configurePoseHistory(fusionDelay);
+        fusionSlam.orderByTime(fusionDelay);
+
+        List<Camera> cameras = new ArrayList<>();
+        List<LiDarWorkerTracker> lidars = new ArrayList<>();
+        int lastTick = 0; // The last tick of the checkpoint resumed from
+        Checkpoint restored = null;
+        SnapshotWriter snapshots = null;
+        try {
+            Map<String, List<StampedDetectedObjects>> detections = configuration.getCameraDataPath() == null
+                    ? Collections.emptyMap() : Camera.loadDetections(configuration.getCameraDataPath());
+            for (Configuration.CameraConfiguration camera : configuration.getCameras()) {
+                List<StampedDetectedObjects> cameraDetections = detections.getOrDefault(camera.getCameraKey(), Collections.emptyList());
+                cameras.add(new Camera(camera.getId(), camera.getFrequency(), cameraDetections));
+            }
+            ForkJoinPool trackingPool = configuration.isLidarParallelTracking() ? ForkJoinPool.commonPool() : null;
+            for (Configuration.LidarConfiguration lidar : configuration.getLidarWorkers()) {
+                lidars.add(new LiDarWorkerTracker(lidar.getId(), lidar.getFrequency(), dataBase, trackingPool));
+            }
+            if (configuration.getOutput().getSnapshotInterval() > 0) {
+                fusionSlam.trackChanges();
+            }
+            if (resume && new File(configuration.getCheckpointPath()).exists()) {
+                restored = Checkpoint.read(configuration.getCheckpointPath());
+                restored.restore(fusionSlam, StatisticalFolder.getInstance(), cameras, lidars, dataBase, gpsimu);
+                lastTick = restored.getTick();
+                Log.info("Resuming after tick " + lastTick);
+            }
+            if (configuration.getOutput().getSnapshotInterval() > 0) {
+                snapshots = new SnapshotWriter(configuration.getSnapshotPath(), lastTick > 0);
+            }
+        } catch (IOException e) {
+            Log.error("Failed to start: " + e.getMessage());
+            executor.shutdown();
+            return;
+        }
+        Checkpointer checkpointer = checkpointInterval > 0
+                ? new Checkpointer(configuration.getCheckpointPath(), fusionSlam, cameras, lidars, dataBase, gpsimu, restored)
+                : null;
+
+        List<MicroService> services = new ArrayList<>();
+        services.add(new FusionSlamService(fusionSlam, snapshots, configuration.getOutput().getSnapshotInterval()));
+        services.add(new PoseService(gpsimu));
+        for (LiDarWorkerTracker lidar : lidars) {
+            services.add(new LiDarService(lidar, lastTick));
+        }
+        for (Camera camera : cameras) {
+            services.add(new CameraService(camera));
+        }
+        if (replay) {
+            executor.shutdown();
+            replay(configuration, services);
+        } else {
+            MessageRecorder recorder = recording == Configuration.RecordingConfiguration.Mode.RECORD ? startRecording(configuration, services) : null;
+            for (MicroService service : services) {
+                executor.start(service);
+            }
+            try {
+                executor.awaitInitialized(); // Ticks sent before a service subscribed would be lost
+                executor.start(new TimeService(configuration.getTickTime(), configuration.getDuration(), configuration.isFastForward(),
+                        lastTick + 1, checkpointInterval, checkpointer == null ? null : checkpointer::checkpoint));
+                executor.awaitTermination();
+                if (checkpointer != null) {
+                    checkpointer.close();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdown();
+            }
+            if (recorder != null) {
+                stopRecording(recorder);
+            }
+        }
+        StatisticalFolder.Snapshot statistics = StatisticalFolder.getInstance().snapshot();
+        try {
+            OutputWriter.write(configuration.getOutputPath(), statistics, fusionSlam.getLandmarks());
+        } catch (IOException e) {
+            Log.error("Failed to write output: " + e.getMessage());
+        }
+        try {
+            StatisticsWriter.write(statistics, configuration.getStatisticsPath());
+        } catch (IOException e) {
+            Log.error("Failed to write statistics: " + e.getMessage());
+        }
+        if (snapshots != null) {
+            try {
+                snapshots.close();
+            } catch (IOException e) {
+                Log.error("Failed to close snapshots: " + e.getMessage());
+            }
+        }
+        if (metrics != null) {
+            try {
+                MetricsWriter.write(metrics, configuration.getMetricsPath());
+            } catch (IOException e) {
+                Log.error("Failed to write metrics: " + e.getMessage());
+            }
+        }
+    }
+
+    // Must run before any service registers, the messages of services registered earlier are not recorded
+    private static MessageRecorder startRecording(Configuration configuration, List<MicroService> services) {
+        try {
+            MessageRecorder recorder = new MessageRecorder(configuration.getRecordingPath(), MessageCodecs.log(), services);
+            MessageBusControl.getInstance().startRecording(recorder);
+            return recorder;
+        } catch (IOException e) {
+            Log.error("Failed to start recording: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void stopRecording(MessageRecorder recorder) {
+        try {
+            recorder.close();
+            Log.info("Recorded " + recorder.getRecordedCount() + " messages"
+                    + (recorder.getDroppedCount() > 0 ? ", left out " + recorder.getDroppedCount() : ""));
+        } catch (IOException e) {
+            Log.error("Failed to close the message log: " + e.getMessage());
+        }
+    }
+
+    // Replays the recorded messages to the services on this thread, counting the ticks as the TimeService would
+    private static void replay(Configuration configuration, List<MicroService> services) {
+        MessageReplayer replayer = new MessageReplayer(configuration.getRecordingPath(), MessageCodecs.log());
+        try {
+            MessageReplayer.Result result = replayer.replay(services, tick -> StatisticalFolder.getInstance().incrementSystemRuntime());
+            Log.info("Replayed " + result.getDispatchedCount() + " messages in " + result.getElapsedNanos() / 1_000_000 + " ms"
+                    + (result.getSkippedCount() > 0 ? ", skipped " + result.getSkippedCount() : ""));
+        } catch (IOException e) {
+            Log.error("Failed to replay messages: " + e.getMessage());
+        }
+    }
+
+    // Must run before any service registers, mailboxes created earlier are not measured
+    private static MessageMetrics enableMetrics(Configuration configuration) {
+        if (!configuration.getMetrics().isEnabled()) {
+            return null;
+        }
+        MessageMetrics metrics = MessageBusControl.getInstance().enableMetrics();
+        if (configuration.getMetrics().isJmx()) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(METRICS_MBEAN_NAME));
+            } catch (JMException e) {
+                Log.error("Failed to register the metrics MBean: " + e.getMessage());
+            }
+        }
+        return metrics;
+    }
+
+    private static MicroServiceExecutor createExecutor(Configuration configuration) {
+        Configuration.ExecutionConfiguration execution = configuration.getExecution();
+        return MicroServiceExecutor.create(execution.getMode(), execution.getPoolSize(), execution.getBatchSize());
+    }
+
+    /**
+     * Applies the per-service mailbox capacities and overflow policies from the configuration.
+     * Must run before any service registers.
+     */
+    private static void configureMailboxes(Configuration configuration) {
+        MessageBusControl control = MessageBusControl.getInstance();
+        for (Map.Entry<String, Configuration.MailboxConfiguration> entry : configuration.getMailboxes().entrySet()) {
+            String serviceName = entry.getKey().equals("default") ? null : entry.getKey();
+            control.configureMailbox(serviceName, entry.getValue().getCapacity(), entry.getValue().getPolicy());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.application.objects.LiDarBinaryFormat;
+
+import java.io.IOException;
+
+/**
+ * Converts a lidar_data.json file into the binary format that LiDarDataBase maps
+ * directly. The configuration can then point "lidars_data_path" at the binary file.
+ */
+public class LiDarDataConverter {
+
+    /**
+     * @param args the JSON file to read and the binary file to write
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: LiDarDataConverter <lidar_data.json> <lidar_data.bin>");
+            return;
+        }
+        try {
+            LiDarBinaryFormat.convert(args[0], args[1]);
+        } catch (IOException e) {
+            System.err.println("Failed to convert " + args[0] + ": " + e.getMessage());
+        }
+    }
+}
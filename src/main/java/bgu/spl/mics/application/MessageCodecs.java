@@ -0,0 +1,152 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.MessageCodec;
+import bgu.spl.mics.MessageLog;
+import bgu.spl.mics.application.messages.DetectObjectsEvent;
+import bgu.spl.mics.application.messages.PoseEvent;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.messages.TrackedObjectsEvent;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.TrackedObject;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The codecs of the simulation's messages, for recording and replaying them.
+ */
+final class MessageCodecs {
+    private MessageCodecs() {
+    }
+
+    /**
+     * @return a message log with a codec for every message of the simulation
+     */
+    static MessageLog log() {
+        return new MessageLog()
+                .register(TickBroadcast.class, new MessageCodec<TickBroadcast>() {
+                    @Override
+                    public void write(TickBroadcast message, DataOutput out) throws IOException {
+                        out.writeInt(message.getTick());
+                    }
+
+                    @Override
+                    public TickBroadcast read(DataInput in) throws IOException {
+                        return new TickBroadcast(in.readInt());
+                    }
+                })
+                .register(TerminatedBroadcast.class, new MessageCodec<TerminatedBroadcast>() {
+                    @Override
+                    public void write(TerminatedBroadcast message, DataOutput out) throws IOException {
+                        writeString(message.getSenderName(), out);
+                    }
+
+                    @Override
+                    public TerminatedBroadcast read(DataInput in) throws IOException {
+                        return new TerminatedBroadcast(readString(in));
+                    }
+                })
+                .register(PoseEvent.class, new MessageCodec<PoseEvent>() {
+                    @Override
+                    public void write(PoseEvent message, DataOutput out) throws IOException {
+                        Pose pose = message.getPose();
+                        out.writeFloat(pose.getX());
+                        out.writeFloat(pose.getY());
+                        out.writeFloat(pose.getYaw());
+                        out.writeInt(pose.getTime());
+                    }
+
+                    @Override
+                    public PoseEvent read(DataInput in) throws IOException {
+                        return new PoseEvent(new Pose(in.readFloat(), in.readFloat(), in.readFloat(), in.readInt()));
+                    }
+                })
+                .register(DetectObjectsEvent.class, new MessageCodec<DetectObjectsEvent>() {
+                    @Override
+                    public void write(DetectObjectsEvent message, DataOutput out) throws IOException {
+                        List<StampedDetectedObjects> frames = message.getStampedDetectedObjects();
+                        out.writeInt(frames.size());
+                        for (StampedDetectedObjects frame : frames) {
+                            out.writeInt(frame.getTime());
+                            out.writeInt(frame.getDetectedObjects().size());
+                            for (DetectedObject object : frame.getDetectedObjects()) {
+                                writeString(object.getId(), out);
+                                writeString(object.getDescription(), out);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public DetectObjectsEvent read(DataInput in) throws IOException {
+                        int frameCount = in.readInt();
+                        List<StampedDetectedObjects> frames = new ArrayList<>(frameCount);
+                        for (int i = 0; i < frameCount; i++) {
+                            int time = in.readInt();
+                            int objectCount = in.readInt();
+                            List<DetectedObject> objects = new ArrayList<>(objectCount);
+                            for (int j = 0; j < objectCount; j++) {
+                                objects.add(new DetectedObject(readString(in), readString(in)));
+                            }
+                            frames.add(new StampedDetectedObjects(time, objects));
+                        }
+                        return new DetectObjectsEvent(frames);
+                    }
+                })
+                .register(TrackedObjectsEvent.class, new MessageCodec<TrackedObjectsEvent>() {
+                    @Override
+                    public void write(TrackedObjectsEvent message, DataOutput out) throws IOException {
+                        List<TrackedObject> objects = message.getTrackedObjects();
+                        out.writeInt(objects.size());
+                        for (TrackedObject object : objects) {
+                            writeString(object.getId(), out);
+                            out.writeInt(object.getTime());
+                            writeString(object.getDescription(), out);
+                            out.writeInt(object.size());
+                            for (int i = 0; i < object.size(); i++) {
+                                out.writeDouble(object.getX(i));
+                                out.writeDouble(object.getY(i));
+                            }
+                        }
+                    }
+
+                    @Override
+                    public TrackedObjectsEvent read(DataInput in) throws IOException {
+                        int objectCount = in.readInt();
+                        List<TrackedObject> objects = new ArrayList<>(objectCount);
+                        for (int i = 0; i < objectCount; i++) {
+                            String id = readString(in);
+                            int time = in.readInt();
+                            String description = readString(in);
+                            int points = in.readInt();
+                            double[] x = new double[points];
+                            double[] y = new double[points];
+                            for (int j = 0; j < points; j++) {
+                                x[j] = in.readDouble();
+                                y[j] = in.readDouble();
+                            }
+                            objects.add(new TrackedObject(id, time, description, x, y));
+                        }
+                        return new TrackedObjectsEvent(objects);
+                    }
+                })
+                .setTickBroadcast(TickBroadcast.class, TickBroadcast::getTick);
+    }
+
+    // Strings may be missing from the input files
+    private static void writeString(String value, DataOutput out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,68 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.LatencyHistogram;
+import bgu.spl.mics.MessageMetrics;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Writes the message bus metrics as JSON: per message type its count, mailbox wait and
+ * callback times in microseconds, and mailbox depth on arrival; per service its callback
+ * times. Sorting the services by their "p99" or "mean" shows which one holds up a tick.
+ */
+final class MetricsWriter {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private MetricsWriter() {
+    }
+
+    static void write(MessageMetrics metrics, String filePath) throws IOException {
+        try (Writer out = Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(out)) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("messageTypes").beginObject();
+            Map<String, LatencyHistogram> waits = metrics.getWaitTimes();
+            Map<String, LatencyHistogram> depths = metrics.getMailboxDepths();
+            for (Map.Entry<String, LatencyHistogram> entry : metrics.getCallbackTimes().entrySet()) {
+                json.name(entry.getKey()).beginObject();
+                json.name("count").value(entry.getValue().getCount());
+                histogram(json, "waitMicros", waits.get(entry.getKey()), 1000);
+                histogram(json, "callbackMicros", entry.getValue(), 1000);
+                histogram(json, "mailboxDepth", depths.get(entry.getKey()), 1);
+                json.endObject();
+            }
+            json.endObject();
+            json.name("services").beginObject();
+            for (Map.Entry<String, LatencyHistogram> entry : metrics.getServiceCallbackTimes().entrySet()) {
+                json.name(entry.getKey()).beginObject();
+                json.name("count").value(entry.getValue().getCount());
+                histogram(json, "callbackMicros", entry.getValue(), 1000);
+                json.endObject();
+            }
+            json.endObject();
+            json.endObject();
+        }
+    }
+
+    // Writes mean, percentiles and max, each divided by unit
+    private static void histogram(JsonWriter json, String name, LatencyHistogram histogram, double unit) throws IOException {
+        if (histogram == null) {
+            return;
+        }
+        json.name(name).beginObject();
+        json.name("mean").value(histogram.getMean() / unit);
+        for (double percentile : PERCENTILES) {
+            String label = percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile);
+            json.name("p" + label).value(histogram.getValueAtPercentile(percentile) / unit);
+        }
+        json.name("max").value(histogram.getMax() / unit);
+        json.endObject();
+    }
+}
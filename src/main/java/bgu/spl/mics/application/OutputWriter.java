@@ -0,0 +1,83 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.application.objects.LandMark;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes output.json: the statistics followed by the landmarks keyed by id,
+ * {@code {"systemRuntime": .., "numDetectedObjects": .., "numTrackedObjects": .., "numLandmarks": ..,
+ * "landMarks": {"id": {"id": .., "description": .., "coordinates": [{"x": .., "y": ..}, ..]}, ..}}}.
+ * These depend only on the input, so every run of the same input writes the same file. The
+ * named counters of the {@link StatisticalFolder}, which depend on timing, are written by
+ * {@link StatisticsWriter} instead.
+ * <p>
+ * The landmarks are streamed from FusionSlam's own arrays, so no copy of the map is
+ * built. The file is written next to the target and moved over it when complete,
+ * so a crash while writing leaves the previous file intact.
+ */
+public final class OutputWriter {
+    private OutputWriter() {
+    }
+
+    /**
+     * @param filePath   the path of the output file
+     * @param statistics the statistics of the run
+     * @param landmarks  the landmarks of the map
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(String filePath, StatisticalFolder.Snapshot statistics, Iterable<LandMark> landmarks)
+            throws IOException {
+        Path target = Paths.get(filePath);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(out)) {
+            json.beginObject();
+            writeStatistics(json, statistics);
+            writeLandmarks(json, landmarks);
+            json.endObject();
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // The statistics of output.json, as fields of the current object
+    static void writeStatistics(JsonWriter json, StatisticalFolder.Snapshot statistics) throws IOException {
+        json.name("systemRuntime").value(statistics.getSystemRuntime());
+        json.name("numDetectedObjects").value(statistics.getNumDetectedObjects());
+        json.name("numTrackedObjects").value(statistics.getNumTrackedObjects());
+        json.name("numLandmarks").value(statistics.getNumLandmarks());
+    }
+
+    // The "landMarks" field of the current object
+    static void writeLandmarks(JsonWriter json, Iterable<LandMark> landmarks) throws IOException {
+        json.name("landMarks").beginObject();
+        for (LandMark landmark : landmarks) {
+            json.name(landmark.getId()).beginObject();
+            json.name("id").value(landmark.getId());
+            json.name("description").value(landmark.getDescription());
+            json.name("coordinates").beginArray();
+            for (int i = 0; i < landmark.size(); i++) {
+                json.beginObject();
+                json.name("x").value(landmark.getX(i));
+                json.name("y").value(landmark.getY(i));
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endObject();
+    }
+}
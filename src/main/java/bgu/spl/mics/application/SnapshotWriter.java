@@ -0,0 +1,64 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.application.objects.LandMark;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends incremental snapshots of the map, one JSON object per line:
+ * {@code {"tick": .., <the statistics of output.json>, "landMarks": {<the landmarks changed since the previous line>}}}.
+ * Each line is flushed as it is written, so if the run crashes, reading the lines in
+ * order and keeping the last version of each landmark gives the map of the last snapshot.
+ */
+public class SnapshotWriter implements Closeable {
+    private final Writer out;
+
+    /**
+     * @param filePath the path of the snapshot file, replaced if it exists
+     * @throws IOException if the file cannot be created
+     */
+    public SnapshotWriter(String filePath) throws IOException {
+        this(filePath, false);
+    }
+
+    /**
+     * @param filePath the path of the snapshot file
+     * @param append   whether to add to an existing file, when resuming from a checkpoint
+     * @throws IOException if the file cannot be opened
+     */
+    public SnapshotWriter(String filePath, boolean append) throws IOException {
+        out = append
+                ? Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                : Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param tick       the tick of the snapshot
+     * @param statistics the statistics at that tick
+     * @param changed    the landmarks created or updated since the previous snapshot
+     * @throws IOException if the line cannot be written
+     */
+    public void write(int tick, StatisticalFolder.Snapshot statistics, Iterable<LandMark> changed) throws IOException {
+        JsonWriter json = new JsonWriter(out); // Not closed, that would close the file
+        json.beginObject();
+        json.name("tick").value(tick);
+        OutputWriter.writeStatistics(json, statistics);
+        OutputWriter.writeLandmarks(json, changed);
+        json.endObject();
+        out.write('\n');
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,71 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes the named counters of the {@link StatisticalFolder} as JSON, kept out of output.json
+ * since they depend on timing and thread scheduling:
+ * {@code {"mailboxes": {"service": {"dropped": .., "handled": .., "mailboxDepth": .., "mailboxPeak": .., "overflow": ..}, ..},
+ * "messagesSent": {"message type": .., ..}, "counters": {"name": .., ..}}}.
+ * The mailboxes and messages sent come from {@link StatisticalFolder#addMessageBusSource},
+ * the counters are the other named counters. Each of the three is left out when it is empty.
+ */
+final class StatisticsWriter {
+    private StatisticsWriter() {
+    }
+
+    static void write(StatisticalFolder.Snapshot statistics, String filePath) throws IOException {
+        // service.<key>.<counter>, grouped by service; keys may contain dots, counters do not
+        Map<String, Map<String, Long>> mailboxes = new TreeMap<>();
+        Map<String, Long> sent = new TreeMap<>();
+        Map<String, Long> others = new TreeMap<>();
+        for (Map.Entry<String, Long> entry : statistics.getCounters().entrySet()) {
+            String name = entry.getKey();
+            if (name.startsWith(StatisticalFolder.SERVICE_PREFIX)) {
+                int dot = name.lastIndexOf('.');
+                mailboxes.computeIfAbsent(name.substring(StatisticalFolder.SERVICE_PREFIX.length(), dot), k -> new TreeMap<>())
+                        .put(name.substring(dot + 1), entry.getValue());
+            } else if (name.startsWith(StatisticalFolder.SENT_PREFIX)) {
+                sent.put(name.substring(StatisticalFolder.SENT_PREFIX.length()), entry.getValue());
+            } else {
+                others.put(name, entry.getValue());
+            }
+        }
+        try (Writer out = Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(out)) {
+            json.setIndent("  ");
+            json.beginObject();
+            if (!mailboxes.isEmpty()) {
+                json.name("mailboxes").beginObject();
+                for (Map.Entry<String, Map<String, Long>> mailbox : mailboxes.entrySet()) {
+                    writeCounts(json, mailbox.getKey(), mailbox.getValue());
+                }
+                json.endObject();
+            }
+            if (!sent.isEmpty()) {
+                writeCounts(json, "messagesSent", sent);
+            }
+            if (!others.isEmpty()) {
+                writeCounts(json, "counters", others);
+            }
+            json.endObject();
+        }
+    }
+
+    private static void writeCounts(JsonWriter json, String name, Map<String, Long> counts) throws IOException {
+        json.name(name).beginObject();
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            json.name(count.getKey()).value(count.getValue());
+        }
+        json.endObject();
+    }
+}
@@ -0,0 +1,19 @@
+package bgu.spl.mics.application.messages;
+
+import bgu.spl.mics.Broadcast;
+
+/**
+ * Sent by a service that has finished its work. When sent by the TimeService,
+ * it means the simulation has reached its duration.
+ */
+public class TerminatedBroadcast implements Broadcast {
+    private final String senderName;
+
+    public TerminatedBroadcast(String senderName) {
+        this.senderName = senderName;
+    }
+
+    public String getSenderName() {
+        return senderName;
+    }
+}
@@ -0,0 +1,18 @@
+package bgu.spl.mics.application.messages;
+
+import bgu.spl.mics.Broadcast;
+
+/**
+ * Sent by the TimeService at every clock tick.
+ */
+public class TickBroadcast implements Broadcast {
+    private final int tick;
+
+    public TickBroadcast(int tick) {
+        this.tick = tick;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+}
@@ -0,0 +1,27 @@
+package bgu.spl.mics.application.messages;
+
+import bgu.spl.mics.Event;
+import bgu.spl.mics.application.objects.TrackedObject;
+
+import java.util.List;
+
+/**
+ * Sent by a LiDAR worker with every object it tracked that is due at a tick,
+ * so a whole camera frame costs one event and one Future.
+ */
+public class TrackedObjectsEvent implements Event<Boolean> {
+    private final List<TrackedObject> trackedObjects;
+
+    public TrackedObjectsEvent(List<TrackedObject> trackedObjects) {
+        this.trackedObjects = trackedObjects;
+    }
+
+    public List<TrackedObject> getTrackedObjects() {
+        return trackedObjects;
+    }
+
+    @Override
+    public String toString() {
+        return getTrackedObjects().toString();
+    }
+}
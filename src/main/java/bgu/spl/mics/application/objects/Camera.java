@@ -4,14 +4,26 @@ package bgu.spl.mics.application.objects;
  * Represents a camera sensor on the robot.
  * Responsible for detecting objects in the environment.
  */
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 public class Camera {
     private final int id;
     private final int frequency; // Time interval at which the camera operates
-    private final List<StampedDetectedObjects> detectedObjectsList;
+    private final List<StampedDetectedObjects> detectedObjectsList; // Sorted by time
+    private int cursor; // Index of the first detection that was not released yet
+    private int lastTick; // The last tick detections were released for
 
     /**
      * Constructor for Camera.
@@ -24,32 +36,150 @@ public class Camera {
         this.id = id;
         this.frequency = frequency;
         this.detectedObjectsList = new ArrayList<>(detectedObjectsList);
+        this.detectedObjectsList.sort(Comparator.comparingInt(StampedDetectedObjects::getTime)); // Stable
+        this.cursor = 0;
+        this.lastTick = 0;
+    }
+
+    /**
+     * Reads a camera_data.json file: for each camera key, the detections of that camera,
+     * {@code {"camera1": [{"time": t, "detectedObjects": [{"id": id, "description": d}, ...]}, ...], ...}}.
+     * A camera's list may also be wrapped in further arrays, which are flattened.
+     *
+     * @param filePath the path of the file
+     * @return the detections by camera key
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static Map<String, List<StampedDetectedObjects>> loadDetections(String filePath) throws IOException {
+        Map<String, List<StampedDetectedObjects>> detections = new HashMap<>();
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                List<StampedDetectedObjects> list = new ArrayList<>();
+                detections.put(reader.nextName(), list);
+                readDetections(reader, list);
+            }
+            reader.endObject();
+        }
+        return detections;
+    }
+
+    private static void readDetections(JsonReader reader, List<StampedDetectedObjects> list) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                readDetections(reader, list);
+                continue;
+            }
+            int time = 0;
+            List<DetectedObject> objects = new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "time":
+                        time = reader.nextInt();
+                        break;
+                    case "detectedObjects":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            objects.add(readDetectedObject(reader));
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            list.add(new StampedDetectedObjects(time, objects));
+        }
+        reader.endArray();
+    }
+
+    private static DetectedObject readDetectedObject(JsonReader reader) throws IOException {
+        String id = null;
+        String description = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "description":
+                    description = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new DetectedObject(id, description);
     }
 
     /**
-     * Retrieves the detected objects for a specific tick.
+     * Retrieves the detections the camera sends at a specific tick: those detected at
+     * {@code currentTick - frequency}, along with any earlier detection that was not
+     * released yet. Ticks are expected to go up, in which case each call costs O(1)
+     * amortized and allocates nothing when there is no detection to release.
+     * Going back to an earlier tick releases its detections again.
      *
      * @param currentTick the current simulation tick
-     * @return a list of StampedDetectedObjects detected at the given tick
+     * @return a list of StampedDetectedObjects to send at the given tick
      */
     public List<StampedDetectedObjects> getDetectedObjectsAtTick(int currentTick) {
-        List<StampedDetectedObjects> result = new ArrayList<>();
-        for (int i = 0; i < detectedObjectsList.size(); i++) {
-            StampedDetectedObjects stamped = detectedObjectsList.get(i);
-            if (stamped.getTime() == currentTick) {
-                result.add(stamped);
-            }
+        if (currentTick < lastTick) {
+            cursor = firstDetectedAfter(currentTick - 1 - frequency);
+        }
+        lastTick = currentTick;
+        int from = cursor;
+        int to = from;
+        while (to < detectedObjectsList.size() && detectedObjectsList.get(to).getTime() + frequency <= currentTick) {
+            to++;
+        }
+        cursor = to;
+        if (to == from) {
+            return Collections.emptyList();
         }
-        return result;
+        if (to - from == 1) {
+            return Collections.singletonList(detectedObjectsList.get(from));
+        }
+        return new ArrayList<>(detectedObjectsList.subList(from, to));
     }
+
     /**
      * Adds a new set of detected objects to the camera's internal list.
+     * If its release tick has already passed, it is released at the next tick.
      *
      * @param stampedDetectedObjects The StampedDetectedObjects to add.
      */
     public void addDetectedObjects(StampedDetectedObjects stampedDetectedObjects) {
-        detectedObjectsList.add(stampedDetectedObjects);
+        int index = Math.max(firstDetectedAfter(stampedDetectedObjects.getTime()), cursor);
+        detectedObjectsList.add(index, stampedDetectedObjects);
     }
+
+    /**
+     * @return true if some detections were not released yet
+     */
+    public boolean hasPendingDetections() {
+        return cursor < detectedObjectsList.size();
+    }
+
+    int getCursor() {
+        return cursor;
+    }
+
+    int getLastTick() {
+        return lastTick;
+    }
+
+    /**
+     * Continues from a checkpoint of a camera with the same detections.
+     */
+    void restore(int cursor, int lastTick) {
+        this.cursor = Math.min(cursor, detectedObjectsList.size());
+        this.lastTick = lastTick;
+    }
+
     /**
      * Gets the unique identifier of the camera.
      *
@@ -67,4 +197,19 @@ public class Camera {
     public int getFrequency() {
         return frequency;
     }
+
+    // Index of the first detection whose time is greater than time
+    private int firstDetectedAfter(int time) {
+        int low = 0;
+        int high = detectedObjectsList.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (detectedObjectsList.get(mid).getTime() <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
 }
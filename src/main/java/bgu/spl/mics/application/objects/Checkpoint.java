@@ -0,0 +1,433 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of a simulation after a tick, from which a new run can continue as if the
+ * first one had not stopped: FusionSlam's landmarks, pose history and waiting objects,
+ * the statistics counters, each camera's release cursor, the objects each LiDAR worker
+ * has not released yet, the consumed LiDAR records and the GPSIMU's tick and status.
+ * <p>
+ * Capturing runs while the services are idle, between ticks, so it copies only what
+ * changed: {@link #capture} takes the landmarks updated and LiDAR records consumed since
+ * the previous capture, along with the small parts of the state, which are bounded by the
+ * sensor delays. {@link #update} applies each capture in turn to a whole checkpoint, and
+ * {@link #write} then writes it, both on any thread while the simulation goes on.
+ * <p>
+ * The file is big-endian binary: the magic "GRCP", a version, the tick, then the
+ * sections in the order above. Strings are modified UTF-8 as written by DataOutput.
+ */
+public final class Checkpoint {
+    private static final int MAGIC = 0x47524350; // "GRCP"
+    private static final int VERSION = 1;
+
+    private int tick;
+    // StatisticalFolder
+    private long systemRuntime;
+    private long numDetectedObjects;
+    private long numTrackedObjects;
+    private long numLandmarks;
+    private Map<String, Long> counters = new LinkedHashMap<>();
+    // GPSIMU
+    private int gpsimuTick;
+    private STATUS gpsimuStatus = STATUS.UP;
+    // Cameras, by position
+    private int[] cameraIds = new int[0];
+    private int[] cameraCursors = new int[0];
+    private int[] cameraLastTicks = new int[0];
+    // LiDAR workers, by position
+    private int[] lidarIds = new int[0];
+    private STATUS[] lidarStatuses = new STATUS[0];
+    private List<List<TrackedObject>> lidarPending = new ArrayList<>();
+    // LiDarDataBase
+    private List<String> consumedIds = new ArrayList<>();
+    private int[] consumedTimes = new int[16];
+    // FusionSlam, the landmarks in the order they were found; the coordinate arrays are
+    // shared with the landmarks, see LandMark.share()
+    private final List<String> landmarkIds = new ArrayList<>();
+    private final List<String> landmarkDescriptions = new ArrayList<>();
+    private int[] landmarkSizes = new int[16];
+    private final List<double[]> landmarkX = new ArrayList<>();
+    private final List<double[]> landmarkY = new ArrayList<>();
+    private final Map<String, Integer> landmarkIndex = new HashMap<>(); // Position of each id in the lists
+    private List<Pose> poses = new ArrayList<>();
+    private List<TrackedObject> pending = new ArrayList<>();
+    private int droppedCount;
+
+    private Checkpoint(int tick) {
+        this.tick = tick;
+    }
+
+    /**
+     * @return a checkpoint of the state before the first tick, for captures to be applied to
+     */
+    public static Checkpoint empty() {
+        return new Checkpoint(0);
+    }
+
+    /**
+     * Starts tracking the landmarks and LiDAR records that change, so that {@link #capture}
+     * need not walk the whole map. Must be called before the services start and after the
+     * state is restored from a checkpoint, if it is.
+     */
+    public static void trackChanges(FusionSlam fusionSlam, LiDarDataBase dataBase) {
+        fusionSlam.trackCheckpointChanges();
+        if (dataBase != null) {
+            dataBase.trackConsumed();
+        }
+    }
+
+    /**
+     * Copies the state of the simulation after {@code tick} that changed since the previous
+     * capture, or since {@link #trackChanges}. No service may be handling a message meanwhile.
+     * Tracked objects are immutable and are not copied, and the landmarks' coordinates are
+     * copied on their next update rather than now. The result holds only the landmarks and
+     * LiDAR records that changed; apply it to the checkpoint it follows with {@link #update}.
+     *
+     * @return the changes
+     */
+    public static Checkpoint capture(int tick, FusionSlam fusionSlam, StatisticalFolder statistics, List<Camera> cameras,
+                                     List<LiDarWorkerTracker> lidars, LiDarDataBase dataBase, GPSIMU gpsimu) {
+        Checkpoint checkpoint = new Checkpoint(tick);
+        checkpoint.systemRuntime = statistics.getSystemRuntime();
+        checkpoint.numDetectedObjects = statistics.getNumDetectedObjects();
+        checkpoint.numTrackedObjects = statistics.getNumTrackedObjects();
+        checkpoint.numLandmarks = statistics.getNumLandmarks();
+        checkpoint.counters = statistics.getNamedCounters();
+        checkpoint.gpsimuTick = gpsimu.getCurrentTick();
+        checkpoint.gpsimuStatus = gpsimu.getStatus();
+
+        int cameraCount = cameras.size();
+        checkpoint.cameraIds = new int[cameraCount];
+        checkpoint.cameraCursors = new int[cameraCount];
+        checkpoint.cameraLastTicks = new int[cameraCount];
+        for (int i = 0; i < cameraCount; i++) {
+            checkpoint.cameraIds[i] = cameras.get(i).getId();
+            checkpoint.cameraCursors[i] = cameras.get(i).getCursor();
+            checkpoint.cameraLastTicks[i] = cameras.get(i).getLastTick();
+        }
+
+        checkpoint.lidarIds = new int[lidars.size()];
+        checkpoint.lidarStatuses = new STATUS[lidars.size()];
+        for (int i = 0; i < lidars.size(); i++) {
+            checkpoint.lidarIds[i] = lidars.get(i).getId();
+            checkpoint.lidarStatuses[i] = lidars.get(i).getStatus();
+            checkpoint.lidarPending.add(lidars.get(i).getPendingObjects());
+        }
+
+        if (dataBase != null) {
+            dataBase.takeConsumed(checkpoint::addConsumed);
+        }
+
+        for (LandMark landmark : fusionSlam.takeCheckpointChanges()) {
+            landmark.share();
+            checkpoint.putLandmark(landmark.getId(), landmark.getDescription(), landmark.size(), landmark.x(), landmark.y());
+        }
+        checkpoint.poses = fusionSlam.getPoses();
+        checkpoint.pending = fusionSlam.getPendingObjects();
+        checkpoint.droppedCount = fusionSlam.getDroppedCount();
+        return checkpoint;
+    }
+
+    /**
+     * Brings this checkpoint up to the state of {@code changes}, the next capture after it.
+     * Landmarks are replaced or added, consumed records are added, and the rest is replaced.
+     */
+    public void update(Checkpoint changes) {
+        tick = changes.tick;
+        systemRuntime = changes.systemRuntime;
+        numDetectedObjects = changes.numDetectedObjects;
+        numTrackedObjects = changes.numTrackedObjects;
+        numLandmarks = changes.numLandmarks;
+        counters = changes.counters;
+        gpsimuTick = changes.gpsimuTick;
+        gpsimuStatus = changes.gpsimuStatus;
+        cameraIds = changes.cameraIds;
+        cameraCursors = changes.cameraCursors;
+        cameraLastTicks = changes.cameraLastTicks;
+        lidarIds = changes.lidarIds;
+        lidarStatuses = changes.lidarStatuses;
+        lidarPending = changes.lidarPending;
+        for (int i = 0; i < changes.consumedIds.size(); i++) {
+            addConsumed(changes.consumedIds.get(i), changes.consumedTimes[i]);
+        }
+        for (int i = 0; i < changes.landmarkIds.size(); i++) {
+            putLandmark(changes.landmarkIds.get(i), changes.landmarkDescriptions.get(i), changes.landmarkSizes[i],
+                    changes.landmarkX.get(i), changes.landmarkY.get(i));
+        }
+        poses = changes.poses;
+        pending = changes.pending;
+        droppedCount = changes.droppedCount;
+    }
+
+    /**
+     * Puts the state of the checkpoint into freshly created objects of a run with the
+     * same configuration and data files. Cameras and LiDAR workers are matched by their
+     * position in the configuration; those whose position in the checkpoint is missing
+     * or holds another id start from the beginning.
+     */
+    public void restore(FusionSlam fusionSlam, StatisticalFolder statistics, List<Camera> cameras,
+                        List<LiDarWorkerTracker> lidars, LiDarDataBase dataBase, GPSIMU gpsimu) {
+        statistics.restore(systemRuntime, numDetectedObjects, numTrackedObjects, numLandmarks, counters);
+        gpsimu.setCurrentTick(gpsimuTick);
+        gpsimu.setStatus(gpsimuStatus);
+        // Sensor ids need not be unique, so the configuration order decides which sensor is which
+        for (int i = 0; i < Math.min(cameras.size(), cameraIds.length); i++) {
+            Camera camera = cameras.get(i);
+            if (cameraIds[i] == camera.getId()) {
+                camera.restore(cameraCursors[i], cameraLastTicks[i]);
+            }
+        }
+        for (int i = 0; i < Math.min(lidars.size(), lidarIds.length); i++) {
+            LiDarWorkerTracker lidar = lidars.get(i);
+            if (lidarIds[i] == lidar.getId()) {
+                lidar.setStatus(lidarStatuses[i]);
+                lidar.restorePendingObjects(lidarPending.get(i));
+            }
+        }
+        if (dataBase != null) {
+            for (int i = 0; i < consumedIds.size(); i++) {
+                dataBase.getCloudPoints(consumedIds.get(i), consumedTimes[i]); // Marks it consumed
+            }
+        }
+        fusionSlam.restore(landmarkIds.toArray(new String[0]), landmarkDescriptions.toArray(new String[0]),
+                Arrays.copyOf(landmarkSizes, landmarkIds.size()), landmarkX.toArray(new double[0][]),
+                landmarkY.toArray(new double[0][]), poses, pending, droppedCount);
+    }
+
+    /**
+     * @return the last tick the checkpoint includes; a resumed run starts at the next one
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * Writes the checkpoint next to {@code filePath} and moves it over that file when
+     * complete, so the file always holds a whole checkpoint.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void write(String filePath) throws IOException {
+        Path target = Paths.get(filePath);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tick);
+
+            out.writeLong(systemRuntime);
+            out.writeLong(numDetectedObjects);
+            out.writeLong(numTrackedObjects);
+            out.writeLong(numLandmarks);
+            out.writeInt(counters.size());
+            for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                out.writeUTF(counter.getKey());
+                out.writeLong(counter.getValue());
+            }
+
+            out.writeInt(gpsimuTick);
+            out.writeByte(gpsimuStatus.ordinal());
+
+            out.writeInt(cameraIds.length);
+            for (int i = 0; i < cameraIds.length; i++) {
+                out.writeInt(cameraIds[i]);
+                out.writeInt(cameraCursors[i]);
+                out.writeInt(cameraLastTicks[i]);
+            }
+
+            out.writeInt(lidarIds.length);
+            for (int i = 0; i < lidarIds.length; i++) {
+                out.writeInt(lidarIds[i]);
+                out.writeByte(lidarStatuses[i].ordinal());
+                writeTrackedObjects(out, lidarPending.get(i));
+            }
+
+            out.writeInt(consumedIds.size());
+            for (int i = 0; i < consumedIds.size(); i++) {
+                out.writeUTF(consumedIds.get(i));
+                out.writeInt(consumedTimes[i]);
+            }
+
+            out.writeInt(landmarkIds.size());
+            for (int i = 0; i < landmarkIds.size(); i++) {
+                out.writeUTF(landmarkIds.get(i));
+                out.writeUTF(landmarkDescriptions.get(i));
+                writePoints(out, landmarkX.get(i), landmarkY.get(i), landmarkSizes[i]);
+            }
+            out.writeInt(poses.size());
+            for (Pose pose : poses) {
+                out.writeInt(pose.getTime());
+                out.writeFloat(pose.getX());
+                out.writeFloat(pose.getY());
+                out.writeFloat(pose.getYaw());
+            }
+            writeTrackedObjects(out, pending);
+            out.writeInt(droppedCount);
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a checkpoint written by {@link #write(String)}.
+     *
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static Checkpoint read(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(filePath)), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(filePath + " is not a checkpoint");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + " in " + filePath);
+            }
+            Checkpoint checkpoint = new Checkpoint(in.readInt());
+
+            checkpoint.systemRuntime = in.readLong();
+            checkpoint.numDetectedObjects = in.readLong();
+            checkpoint.numTrackedObjects = in.readLong();
+            checkpoint.numLandmarks = in.readLong();
+            int counterCount = in.readInt();
+            for (int i = 0; i < counterCount; i++) {
+                checkpoint.counters.put(in.readUTF(), in.readLong());
+            }
+
+            checkpoint.gpsimuTick = in.readInt();
+            checkpoint.gpsimuStatus = readStatus(in);
+
+            int cameraCount = in.readInt();
+            checkpoint.cameraIds = new int[cameraCount];
+            checkpoint.cameraCursors = new int[cameraCount];
+            checkpoint.cameraLastTicks = new int[cameraCount];
+            for (int i = 0; i < cameraCount; i++) {
+                checkpoint.cameraIds[i] = in.readInt();
+                checkpoint.cameraCursors[i] = in.readInt();
+                checkpoint.cameraLastTicks[i] = in.readInt();
+            }
+
+            int lidarCount = in.readInt();
+            checkpoint.lidarIds = new int[lidarCount];
+            checkpoint.lidarStatuses = new STATUS[lidarCount];
+            for (int i = 0; i < lidarCount; i++) {
+                checkpoint.lidarIds[i] = in.readInt();
+                checkpoint.lidarStatuses[i] = readStatus(in);
+                checkpoint.lidarPending.add(readTrackedObjects(in));
+            }
+
+            int consumedCount = in.readInt();
+            for (int i = 0; i < consumedCount; i++) {
+                checkpoint.addConsumed(in.readUTF(), in.readInt());
+            }
+
+            int landmarkCount = in.readInt();
+            for (int i = 0; i < landmarkCount; i++) {
+                String id = in.readUTF();
+                String description = in.readUTF();
+                int size = in.readInt();
+                checkpoint.putLandmark(id, description, size, readDoubles(in, size), readDoubles(in, size));
+            }
+            int poseCount = in.readInt();
+            for (int i = 0; i < poseCount; i++) {
+                int time = in.readInt();
+                checkpoint.poses.add(new Pose(in.readFloat(), in.readFloat(), in.readFloat(), time));
+            }
+            checkpoint.pending = readTrackedObjects(in);
+            checkpoint.droppedCount = in.readInt();
+            return checkpoint;
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Corrupt checkpoint " + filePath, e);
+        }
+    }
+
+    private void addConsumed(String id, int time) {
+        if (consumedIds.size() == consumedTimes.length) {
+            consumedTimes = Arrays.copyOf(consumedTimes, consumedTimes.length * 2);
+        }
+        consumedTimes[consumedIds.size()] = time;
+        consumedIds.add(id);
+    }
+
+    private void putLandmark(String id, String description, int size, double[] x, double[] y) {
+        Integer index = landmarkIndex.get(id);
+        if (index == null) {
+            index = landmarkIds.size();
+            landmarkIndex.put(id, index);
+            landmarkIds.add(id);
+            landmarkDescriptions.add(description);
+            landmarkX.add(x);
+            landmarkY.add(y);
+            if (index == landmarkSizes.length) {
+                landmarkSizes = Arrays.copyOf(landmarkSizes, landmarkSizes.length * 2);
+            }
+        } else {
+            landmarkX.set(index, x);
+            landmarkY.set(index, y);
+        }
+        landmarkSizes[index] = size;
+    }
+
+    private static void writeTrackedObjects(DataOutputStream out, List<TrackedObject> trackedObjects) throws IOException {
+        out.writeInt(trackedObjects.size());
+        for (TrackedObject trackedObject : trackedObjects) {
+            out.writeUTF(trackedObject.getId());
+            out.writeInt(trackedObject.getTime());
+            out.writeUTF(trackedObject.getDescription());
+            writePoints(out, trackedObject.x(), trackedObject.y(), trackedObject.size());
+        }
+    }
+
+    private static List<TrackedObject> readTrackedObjects(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<TrackedObject> trackedObjects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = in.readUTF();
+            int time = in.readInt();
+            String description = in.readUTF();
+            int size = in.readInt();
+            trackedObjects.add(new TrackedObject(id, time, description, readDoubles(in, size), readDoubles(in, size)));
+        }
+        return trackedObjects;
+    }
+
+    private static void writePoints(DataOutputStream out, double[] x, double[] y, int size) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(x[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(y[i]);
+        }
+    }
+
+    private static double[] readDoubles(DataInputStream in, int size) throws IOException {
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+    private static STATUS readStatus(DataInputStream in) throws IOException {
+        return STATUS.values()[in.readUnsignedByte()];
+    }
+}
@@ -1,10 +1,31 @@
-package bgu.spl.mics.application.objects;
-
-/**
- * CloudPoint represents a specific point in a 3D space as detected by the LiDAR.
- * These points are used to generate a point cloud representing objects in the environment.
- */
-public class CloudPoint {
-
-    // TODO: Define fields and methods.
-}
+package bgu.spl.mics.application.objects;
+
+/**
+ * CloudPoint represents a specific point in a 3D space as detected by the LiDAR.
+ * These points are used to generate a point cloud representing objects in the environment.
+ * <p>
+ * Bulk point data is kept in {@link CloudPointStorage}; this class is for handing out
+ * single points, for example the coordinates of a {@link LandMark}.
+ */
+public class CloudPoint {
+    private final double x;
+    private final double y;
+
+    public CloudPoint(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ")";
+    }
+}
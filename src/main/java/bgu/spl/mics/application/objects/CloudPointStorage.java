@@ -0,0 +1,253 @@
+package bgu.spl.mics.application.objects;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Fixed-capacity columnar storage for the coordinates of many cloud points.
+ * The x, y and z coordinates are kept in three separate primitive columns addressed
+ * by point index, so reading a point allocates nothing and loops over a column
+ * touch contiguous memory. The columns hold doubles or floats, on the heap or in
+ * direct (off-heap) memory, see {@link Kind}.
+ * <p>
+ * Points are written once by a single loader thread and must be published to readers
+ * through a happens-before edge (a lock or a volatile write) before they are read.
+ */
+public abstract class CloudPointStorage {
+
+    /**
+     * Where and how precisely the coordinates are kept.
+     */
+    public enum Kind {
+        /** 24 bytes per point on the heap, exact. */
+        HEAP_DOUBLE,
+        /** 12 bytes per point on the heap, about 7 significant digits. */
+        HEAP_FLOAT,
+        /** 24 bytes per point outside the heap, exact. */
+        DIRECT_DOUBLE,
+        /** 12 bytes per point outside the heap, about 7 significant digits. */
+        DIRECT_FLOAT
+    }
+
+    private final int capacity;
+
+    private CloudPointStorage(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param kind     how to keep the coordinates
+     * @param capacity the number of points the storage can hold
+     * @return a new storage with all coordinates set to 0
+     */
+    public static CloudPointStorage allocate(Kind kind, int capacity) {
+        switch (kind) {
+            case HEAP_FLOAT:
+                return new HeapFloatStorage(capacity);
+            case DIRECT_DOUBLE:
+                return new DoubleBufferStorage(direct(capacity, Double.BYTES).asDoubleBuffer(), capacity);
+            case DIRECT_FLOAT:
+                return new FloatBufferStorage(direct(capacity, Float.BYTES).asFloatBuffer(), capacity);
+            default:
+                return new HeapDoubleStorage(capacity);
+        }
+    }
+
+    /**
+     * Wraps existing coordinate arrays without copying them.
+     *
+     * @param x the x coordinates
+     * @param y the y coordinates, of the same length
+     * @param z the z coordinates, of the same length
+     * @return a storage backed by the arrays
+     */
+    public static CloudPointStorage wrap(double[] x, double[] y, double[] z) {
+        if (y.length != x.length || z.length != x.length) {
+            throw new IllegalArgumentException("Coordinate columns must have the same length");
+        }
+        return new HeapDoubleStorage(x, y, z);
+    }
+
+    /**
+     * Views three float columns laid out one after the other in {@code columns},
+     * for example a region of a memory-mapped file, without copying them.
+     *
+     * @param columns  capacity x coordinates, then capacity y coordinates, then capacity z coordinates
+     * @param capacity the number of points
+     * @return a storage reading from the buffer
+     */
+    public static CloudPointStorage view(FloatBuffer columns, int capacity) {
+        return new FloatBufferStorage(columns, capacity);
+    }
+
+    public final int capacity() {
+        return capacity;
+    }
+
+    public abstract double getX(int index);
+
+    public abstract double getY(int index);
+
+    public abstract double getZ(int index);
+
+    public abstract void set(int index, double x, double y, double z);
+
+    /**
+     * Copies the x and y coordinates of {@code length} points starting at {@code from}
+     * into the given arrays, for kernels that work on primitive arrays.
+     */
+    public void copyXY(int from, double[] x, double[] y, int length) {
+        for (int i = 0; i < length; i++) {
+            x[i] = getX(from + i);
+            y[i] = getY(from + i);
+        }
+    }
+
+    private static ByteBuffer direct(int capacity, int bytesPerCoordinate) {
+        return ByteBuffer.allocateDirect(3 * capacity * bytesPerCoordinate).order(ByteOrder.nativeOrder());
+    }
+
+    private static final class HeapDoubleStorage extends CloudPointStorage {
+        private final double[] x;
+        private final double[] y;
+        private final double[] z;
+
+        private HeapDoubleStorage(int capacity) {
+            this(new double[capacity], new double[capacity], new double[capacity]);
+        }
+
+        private HeapDoubleStorage(double[] x, double[] y, double[] z) {
+            super(x.length);
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public double getX(int index) {
+            return x[index];
+        }
+
+        @Override
+        public double getY(int index) {
+            return y[index];
+        }
+
+        @Override
+        public double getZ(int index) {
+            return z[index];
+        }
+
+        @Override
+        public void set(int index, double x, double y, double z) {
+            this.x[index] = x;
+            this.y[index] = y;
+            this.z[index] = z;
+        }
+
+        @Override
+        public void copyXY(int from, double[] x, double[] y, int length) {
+            System.arraycopy(this.x, from, x, 0, length);
+            System.arraycopy(this.y, from, y, 0, length);
+        }
+    }
+
+    private static final class HeapFloatStorage extends CloudPointStorage {
+        private final float[] x;
+        private final float[] y;
+        private final float[] z;
+
+        private HeapFloatStorage(int capacity) {
+            super(capacity);
+            this.x = new float[capacity];
+            this.y = new float[capacity];
+            this.z = new float[capacity];
+        }
+
+        @Override
+        public double getX(int index) {
+            return x[index];
+        }
+
+        @Override
+        public double getY(int index) {
+            return y[index];
+        }
+
+        @Override
+        public double getZ(int index) {
+            return z[index];
+        }
+
+        @Override
+        public void set(int index, double x, double y, double z) {
+            this.x[index] = (float) x;
+            this.y[index] = (float) y;
+            this.z[index] = (float) z;
+        }
+    }
+
+    private static final class DoubleBufferStorage extends CloudPointStorage {
+        private final DoubleBuffer columns; // Absolute access only, so it can be shared between threads
+
+        private DoubleBufferStorage(DoubleBuffer columns, int capacity) {
+            super(capacity);
+            this.columns = columns;
+        }
+
+        @Override
+        public double getX(int index) {
+            return columns.get(index);
+        }
+
+        @Override
+        public double getY(int index) {
+            return columns.get(capacity() + index);
+        }
+
+        @Override
+        public double getZ(int index) {
+            return columns.get(2 * capacity() + index);
+        }
+
+        @Override
+        public void set(int index, double x, double y, double z) {
+            columns.put(index, x);
+            columns.put(capacity() + index, y);
+            columns.put(2 * capacity() + index, z);
+        }
+    }
+
+    private static final class FloatBufferStorage extends CloudPointStorage {
+        private final FloatBuffer columns; // Absolute access only, so it can be shared between threads
+
+        private FloatBufferStorage(FloatBuffer columns, int capacity) {
+            super(capacity);
+            this.columns = columns;
+        }
+
+        @Override
+        public double getX(int index) {
+            return columns.get(index);
+        }
+
+        @Override
+        public double getY(int index) {
+            return columns.get(capacity() + index);
+        }
+
+        @Override
+        public double getZ(int index) {
+            return columns.get(2 * capacity() + index);
+        }
+
+        @Override
+        public void set(int index, double x, double y, double z) {
+            columns.put(index, (float) x);
+            columns.put(capacity() + index, (float) y);
+            columns.put(2 * capacity() + index, (float) z);
+        }
+    }
+}
@@ -1,13 +1,438 @@
-package bgu.spl.mics.application.objects;
-
-/**
- * Manages the fusion of sensor data for simultaneous localization and mapping (SLAM).
- * Combines data from multiple sensors (e.g., LiDAR, camera) to build and update a global map.
- * Implements the Singleton pattern to ensure a single instance of FusionSlam exists.
- */
-public class FusionSlam {
-    // Singleton instance holder
-    private static class FusionSlamHolder {
-        // TODO: Implement singleton instance logic.
-    }
-}
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Manages the fusion of sensor data for simultaneous localization and mapping (SLAM).
+ * Combines data from multiple sensors (e.g., LiDAR, camera) to build and update a global map.
+ * Implements the Singleton pattern to ensure a single instance of FusionSlam exists.
+ * <p>
+ * Landmarks are kept in a hash map by id and in a uniform grid by centroid, so
+ * updating a landmark and finding the landmarks near a point do not depend on the
+ * size of the map. Not thread-safe; the map belongs to the FusionSlamService.
+ * <p>
+ * Tracked objects lag the current tick by the sensor delays, so the recent poses are
+ * kept in a {@link PoseHistory} sized from the largest delay. Objects whose pose has
+ * not arrived yet wait in a queue by time and are fused when it does.
+ * <p>
+ * Averaging makes the map depend on the order objects are fused in, and the order
+ * they arrive in depends on thread timing. With {@link #orderByTime(int)} objects wait
+ * in the queue until no earlier one should still arrive, and are fused by time and then
+ * id, so every run builds the same map unless an object arrives after its turn; such
+ * objects are fused anyway and counted, see {@link #getLateCount()}.
+ * <p>
+ * When changes are tracked, the landmarks created or updated since the last
+ * {@link #takeChangedLandmarks()} are listed once each, for incremental snapshots.
+ * Checkpoints keep a list of their own the same way, so taking one does not walk the map.
+ */
+public class FusionSlam {
+    // Side of a grid cell, in the units of the coordinates (meters)
+    public static final double DEFAULT_CELL_SIZE = 4.0;
+    // Poses kept when the history is not configured
+    private static final int DEFAULT_POSE_HISTORY = 64;
+    // Objects of the same time and id carry the same points, so ties left after this need no order
+    private static final Comparator<TrackedObject> FUSION_ORDER = Comparator.comparingInt(TrackedObject::getTime)
+            .thenComparing(TrackedObject::getId, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(TrackedObject::getDescription, Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+
+    // Singleton instance holder
+    private static class FusionSlamHolder {
+        private static final FusionSlam instance = new FusionSlam(DEFAULT_CELL_SIZE);
+    }
+
+    private final double cellSize;
+    private final Map<String, LandMark> landmarks = new LinkedHashMap<>(); // In the order they were found
+    private final Map<Long, List<LandMark>> grid = new HashMap<>();
+    private final PoseTransform transform = new PoseTransform();
+    private PoseHistory poses = new PoseHistory(DEFAULT_POSE_HISTORY);
+    private final PriorityQueue<TrackedObject> pending = new PriorityQueue<>(FUSION_ORDER);
+    private int maxSensorDelay = -1; // Negative unless fusion is ordered by time
+    private int fusedUntil = Integer.MAX_VALUE; // The latest time whose objects may be fused
+    private int droppedCount = 0;
+    private int lateCount = 0;
+    private List<LandMark> changed; // Null unless changes are tracked
+    private List<LandMark> changedSinceCheckpoint; // Null unless checkpoints are taken
+
+    // Package-private for benchmarks, which need maps of several sizes
+    FusionSlam(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * @return the singleton instance of FusionSlam
+     */
+    public static FusionSlam getInstance() {
+        return FusionSlamHolder.instance;
+    }
+
+    /**
+     * Sizes the pose history so it holds every pose a tracked object can still need.
+     * Must be called before the first pose is added.
+     *
+     * @param maxSensorDelay the most ticks between a detection and its tracked object reaching FusionSlam
+     */
+    public void configurePoseHistory(int maxSensorDelay) {
+        // Twice the delay leaves room for messages that wait in mailboxes
+        poses = new PoseHistory(Math.max(2 * (maxSensorDelay + 1), 16));
+    }
+
+    /**
+     * Holds tracked objects until every object of their time has arrived, then fuses them
+     * by time and id. The objects of time t arrive by tick {@code t + maxSensorDelay}, so
+     * they are fused once {@link #advance(int)} reports the tick after it; call
+     * {@link #flush()} once no more objects will arrive. Must be called before the first
+     * tracked object is added.
+     *
+     * @param maxSensorDelay the most ticks between a detection and its tracked object being sent
+     */
+    public void orderByTime(int maxSensorDelay) {
+        this.maxSensorDelay = maxSensorDelay;
+        this.fusedUntil = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Fuses the waiting objects that can no longer be preceded by another one, when fusion
+     * is ordered by time. Every object sent before {@code tick} must have been added.
+     *
+     * @param tick the current tick
+     */
+    public void advance(int tick) {
+        if (maxSensorDelay >= 0) {
+            fusedUntil = Math.max(fusedUntil, tick - 1 - maxSensorDelay);
+            fusePending();
+        }
+    }
+
+    /**
+     * Fuses every waiting object whose pose is known, once no more objects will arrive.
+     */
+    public void flush() {
+        fusedUntil = Integer.MAX_VALUE;
+        fusePending();
+    }
+
+    /**
+     * Starts listing the landmarks that are created or updated, see {@link #takeChangedLandmarks()}.
+     */
+    public void trackChanges() {
+        if (changed == null) {
+            changed = new ArrayList<>();
+        }
+    }
+
+    /**
+     * @return the landmarks created or updated since the previous call, in the order they
+     * first changed, and starts a new list; empty if changes are not tracked
+     */
+    public List<LandMark> takeChangedLandmarks() {
+        if (changed == null || changed.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<LandMark> taken = changed;
+        changed = new ArrayList<>(Math.max(16, taken.size()));
+        for (LandMark landmark : taken) {
+            landmark.changed = false;
+        }
+        return taken;
+    }
+
+    /**
+     * Starts listing the landmarks that are created or updated for checkpoints, apart from
+     * the list of {@link #trackChanges()}. Call it after restoring a checkpoint, whose
+     * landmarks need not be listed again.
+     */
+    void trackCheckpointChanges() {
+        if (changedSinceCheckpoint == null) {
+            changedSinceCheckpoint = new ArrayList<>();
+        }
+    }
+
+    /**
+     * @return the landmarks created or updated since the previous call, in the order they
+     * first changed, and starts a new list; empty if checkpoint changes are not tracked
+     */
+    List<LandMark> takeCheckpointChanges() {
+        if (changedSinceCheckpoint == null || changedSinceCheckpoint.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<LandMark> taken = changedSinceCheckpoint;
+        changedSinceCheckpoint = new ArrayList<>(Math.max(16, taken.size()));
+        for (LandMark landmark : taken) {
+            landmark.changedSinceCheckpoint = false;
+        }
+        return taken;
+    }
+
+    /**
+     * Records the robot's pose and fuses the waiting tracked objects it was the last
+     * missing pose for. Poses are expected to arrive in time order; waiting objects
+     * whose pose is older than this one and is not in the history are dropped.
+     *
+     * @param pose the pose of the robot
+     */
+    public void addPose(Pose pose) {
+        poses.add(pose);
+        fusePending();
+    }
+
+    /**
+     * @return the pose of the given time, or null if it is not in the history
+     */
+    public Pose getPose(int time) {
+        return poses.get(time);
+    }
+
+    /**
+     * Fuses tracked objects whose pose is known and queues the others until it arrives,
+     * or until their turn when fusion is ordered by time.
+     *
+     * @param trackedObjects the tracked objects, in the robot's frame
+     */
+    public void addTrackedObjects(List<TrackedObject> trackedObjects) {
+        if (maxSensorDelay >= 0 && fusedUntil != Integer.MAX_VALUE) {
+            for (int i = 0; i < trackedObjects.size(); i++) {
+                if (trackedObjects.get(i).getTime() <= fusedUntil) {
+                    lateCount++; // Objects after it were fused already
+                }
+            }
+        }
+        pending.addAll(trackedObjects);
+        fusePending();
+    }
+
+    /**
+     * @return the number of tracked objects waiting for their pose or their turn
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of tracked objects that arrived after their turn when fusion is
+     * ordered by time, and were fused out of order
+     */
+    public int getLateCount() {
+        return lateCount;
+    }
+
+    /**
+     * @return the number of tracked objects dropped because their pose was not available
+     */
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Fuses a tracked object into the map, moving its points into the global frame
+     * with the pose the robot had when the object was detected.
+     *
+     * @param trackedObject the tracked object, in the robot's frame
+     * @param pose          the pose at the object's time
+     * @return the landmark after the update
+     */
+    public LandMark update(TrackedObject trackedObject, Pose pose) {
+        int length = transform.setPose(pose).apply(trackedObject);
+        return updateLandmark(trackedObject.getId(), trackedObject.getDescription(),
+                transform.getX(), transform.getY(), length);
+    }
+
+    /**
+     * Adds an observation of a landmark in global coordinates, creating the landmark
+     * the first time its id is seen and averaging the observation into it afterwards.
+     *
+     * @param id          the id of the landmark
+     * @param description its description, used when the landmark is created
+     * @param x           the global x coordinates of the observed points
+     * @param y           the global y coordinates of the observed points
+     * @param length      the number of points to take from {@code x} and {@code y}
+     * @return the landmark after the update
+     */
+    public LandMark updateLandmark(String id, String description, double[] x, double[] y, int length) {
+        LandMark landmark = landmarks.get(id);
+        if (landmark == null) {
+            landmark = new LandMark(id, description, x, y, length);
+            landmarks.put(id, landmark);
+            cell(cellKey(landmark), true).add(landmark);
+            markChanged(landmark);
+            return landmark;
+        }
+        markChanged(landmark);
+        long before = cellKey(landmark);
+        landmark.update(x, y, length);
+        long after = cellKey(landmark);
+        if (before != after) {
+            List<LandMark> cell = cell(before, false);
+            cell.remove(landmark);
+            if (cell.isEmpty()) {
+                grid.remove(before);
+            }
+            cell(after, true).add(landmark);
+        }
+        return landmark;
+    }
+
+    /**
+     * @return the landmark with the given id, or null if there is none
+     */
+    public LandMark getLandmark(String id) {
+        return landmarks.get(id);
+    }
+
+    /**
+     * @return every landmark, in the order they were found
+     */
+    public Collection<LandMark> getLandmarks() {
+        return Collections.unmodifiableCollection(landmarks.values());
+    }
+
+    public int getLandmarkCount() {
+        return landmarks.size();
+    }
+
+    /**
+     * @param x      the x coordinate of the center
+     * @param y      the y coordinate of the center
+     * @param radius the largest distance from the center to a landmark's centroid
+     * @return the landmarks whose centroid is within {@code radius} of (x, y), in no particular order
+     */
+    public List<LandMark> landmarksNear(double x, double y, double radius) {
+        List<LandMark> near = new ArrayList<>();
+        int minX = cellIndex(x - radius);
+        int maxX = cellIndex(x + radius);
+        int minY = cellIndex(y - radius);
+        int maxY = cellIndex(y + radius);
+        if (((double) maxX - minX + 1) * ((double) maxY - minY + 1) > grid.size()) {
+            // Fewer occupied cells than cells in range, checking them all is cheaper
+            for (List<LandMark> cell : grid.values()) {
+                addNear(cell, x, y, radius, near);
+            }
+            return near;
+        }
+        for (int cellX = minX; cellX <= maxX; cellX++) {
+            for (int cellY = minY; cellY <= maxY; cellY++) {
+                List<LandMark> cell = grid.get(cellKey(cellX, cellY));
+                if (cell != null) {
+                    addNear(cell, x, y, radius, near);
+                }
+            }
+        }
+        return near;
+    }
+
+    /**
+     * @return the landmarks whose centroid is within {@code radius} of the robot's position
+     */
+    public List<LandMark> landmarksNear(Pose pose, double radius) {
+        return landmarksNear(pose.getX(), pose.getY(), radius);
+    }
+
+    // Fuses the waiting objects in order up to the latest time both allowed and with a pose
+    private void fusePending() {
+        int until = Math.min(fusedUntil, poses.getLatestTime());
+        while (!pending.isEmpty() && pending.peek().getTime() <= until) {
+            TrackedObject trackedObject = pending.poll();
+            if (poses.contains(trackedObject.getTime())) {
+                fuse(trackedObject);
+            } else {
+                droppedCount++; // Its pose is gone from the history or never came
+            }
+        }
+    }
+
+    private void fuse(TrackedObject trackedObject) {
+        poses.setPose(transform, trackedObject.getTime());
+        int length = transform.apply(trackedObject);
+        updateLandmark(trackedObject.getId(), trackedObject.getDescription(), transform.getX(), transform.getY(), length);
+    }
+
+    /**
+     * @return the poses in the history, by time, for checkpoints
+     */
+    List<Pose> getPoses() {
+        return poses.getPoses();
+    }
+
+    /**
+     * @return the tracked objects waiting for their pose or their turn, in no particular order
+     */
+    List<TrackedObject> getPendingObjects() {
+        return new ArrayList<>(pending);
+    }
+
+    /**
+     * Continues from a checkpoint. The map must be empty and the pose history configured;
+     * changes must be tracked first if they are to be.
+     *
+     * @param ids          the ids of the landmarks, in the order they were found
+     * @param descriptions their descriptions
+     * @param sizes        their numbers of points
+     * @param x            the x coordinates of each landmark's points
+     * @param y            the y coordinates of each landmark's points
+     * @param poses        the poses of the history, by time
+     * @param pending      the tracked objects that were waiting for their pose or their turn
+     * @param droppedCount the number of tracked objects dropped so far
+     */
+    void restore(String[] ids, String[] descriptions, int[] sizes, double[][] x, double[][] y, List<Pose> poses,
+                 List<TrackedObject> pending, int droppedCount) {
+        // The restored landmarks count as changed when changes are tracked: the interrupted
+        // run took the checkpoint after its last snapshot, which may lack their latest version
+        for (int i = 0; i < ids.length; i++) {
+            updateLandmark(ids[i], descriptions[i], x[i], y[i], sizes[i]);
+        }
+        for (Pose pose : poses) {
+            this.poses.add(pose);
+        }
+        this.pending.addAll(pending);
+        this.droppedCount = droppedCount;
+    }
+
+    private void markChanged(LandMark landmark) {
+        if (changed != null && !landmark.changed) {
+            landmark.changed = true;
+            changed.add(landmark);
+        }
+        if (changedSinceCheckpoint != null && !landmark.changedSinceCheckpoint) {
+            landmark.changedSinceCheckpoint = true;
+            changedSinceCheckpoint.add(landmark);
+        }
+    }
+
+    private static void addNear(List<LandMark> cell, double x, double y, double radius, List<LandMark> near) {
+        for (LandMark landmark : cell) {
+            double dx = landmark.getCentroidX() - x;
+            double dy = landmark.getCentroidY() - y;
+            if (dx * dx + dy * dy <= radius * radius) {
+                near.add(landmark);
+            }
+        }
+    }
+
+    private List<LandMark> cell(long key, boolean create) {
+        List<LandMark> cell = grid.get(key);
+        if (cell == null && create) {
+            cell = new ArrayList<>(2);
+            grid.put(key, cell);
+        }
+        return cell;
+    }
+
+    private long cellKey(LandMark landmark) {
+        return cellKey(cellIndex(landmark.getCentroidX()), cellIndex(landmark.getCentroidY()));
+    }
+
+    private int cellIndex(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long cellKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+}
@@ -1,9 +1,182 @@
 package bgu.spl.mics.application.objects;
 
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
 /**
  * Represents the robot's GPS and IMU system.
  * Provides information about the robot's position and movement.
+ * <p>
+ * The recorded poses are streamed from pose_data.json into primitive arrays, about
+ * 16 bytes per pose. When the recording has one pose per tick, as pose_data.json
+ * does, the pose of a tick is found by subtraction; otherwise by binary search.
+ * Pose objects are only created when {@link #getPose(int)} is called.
  */
 public class GPSIMU {
-    // TODO: Define fields and methods.
+    private int currentTick = 0;
+    private STATUS status = STATUS.UP;
+    private final int size;
+    private final int[] times; // Sorted
+    private final float[] x;
+    private final float[] y;
+    private final float[] yaw;
+    private final boolean consecutive; // times[i] == times[0] + i
+
+    private GPSIMU(int[] times, float[] x, float[] y, float[] yaw, int size) {
+        this.size = size;
+        this.times = times;
+        this.x = x;
+        this.y = y;
+        this.yaw = yaw;
+        this.consecutive = size == 0 || times[size - 1] - times[0] == size - 1;
+    }
+
+    /**
+     * Reads a pose_data.json file: {@code [{"time": t, "x": x, "y": y, "yaw": yaw}, ...]}.
+     * Poses are sorted by time if the file is not.
+     *
+     * @param filePath the path of the file
+     * @return the recording
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static GPSIMU load(String filePath) throws IOException {
+        int size = 0;
+        int[] times = new int[1024];
+        float[] x = new float[1024];
+        float[] y = new float[1024];
+        float[] yaw = new float[1024];
+        boolean sorted = true;
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (size == times.length) {
+                    times = Arrays.copyOf(times, size * 2);
+                    x = Arrays.copyOf(x, size * 2);
+                    y = Arrays.copyOf(y, size * 2);
+                    yaw = Arrays.copyOf(yaw, size * 2);
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "time":
+                            times[size] = reader.nextInt();
+                            break;
+                        case "x":
+                            x[size] = (float) reader.nextDouble();
+                            break;
+                        case "y":
+                            y[size] = (float) reader.nextDouble();
+                            break;
+                        case "yaw":
+                            yaw[size] = (float) reader.nextDouble();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                sorted &= size == 0 || times[size - 1] <= times[size];
+                size++;
+            }
+            reader.endArray();
+        }
+        if (!sorted) {
+            return sorted(times, x, y, yaw, size);
+        }
+        // Trim the doubling slack, up to half of the arrays
+        return new GPSIMU(Arrays.copyOf(times, size), Arrays.copyOf(x, size), Arrays.copyOf(y, size),
+                Arrays.copyOf(yaw, size), size);
+    }
+
+    private static GPSIMU sorted(int[] times, float[] x, float[] y, float[] yaw, int size) {
+        Integer[] order = IntStream.range(0, size).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.comparingInt(i -> times[i]));
+        int[] sortedTimes = new int[size];
+        float[] sortedX = new float[size];
+        float[] sortedY = new float[size];
+        float[] sortedYaw = new float[size];
+        for (int i = 0; i < size; i++) {
+            sortedTimes[i] = times[order[i]];
+            sortedX[i] = x[order[i]];
+            sortedY[i] = y[order[i]];
+            sortedYaw[i] = yaw[order[i]];
+        }
+        return new GPSIMU(sortedTimes, sortedX, sortedY, sortedYaw, size);
+    }
+
+    /**
+     * @return the index of the pose recorded at {@code tick}, or -1 if there is none
+     */
+    public int indexOf(int tick) {
+        if (consecutive) {
+            int index = size == 0 ? -1 : tick - times[0];
+            return index >= 0 && index < size ? index : -1;
+        }
+        int index = Arrays.binarySearch(times, 0, size, tick);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @return true if a pose was recorded at {@code tick}
+     */
+    public boolean hasPose(int tick) {
+        return indexOf(tick) >= 0;
+    }
+
+    /**
+     * @return a new Pose recorded at {@code tick}, or null if there is none
+     */
+    public Pose getPose(int tick) {
+        int index = indexOf(tick);
+        return index < 0 ? null : new Pose(x[index], y[index], yaw[index], times[index]);
+    }
+
+    public float getX(int index) {
+        return x[index];
+    }
+
+    public float getY(int index) {
+        return y[index];
+    }
+
+    public float getYaw(int index) {
+        return yaw[index];
+    }
+
+    /**
+     * @return the number of recorded poses
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the time of the last recorded pose, or Integer.MIN_VALUE if there is none
+     */
+    public int getLastTime() {
+        return size == 0 ? Integer.MIN_VALUE : times[size - 1];
+    }
+
+    public int getCurrentTick() {
+        return currentTick;
+    }
+
+    public void setCurrentTick(int currentTick) {
+        this.currentTick = currentTick;
+    }
+
+    public STATUS getStatus() {
+        return status;
+    }
+
+    public void setStatus(STATUS status) {
+        this.status = status;
+    }
 }
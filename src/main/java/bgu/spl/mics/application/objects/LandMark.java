@@ -1,9 +1,142 @@
-package bgu.spl.mics.application.objects;
-
-/**
- * Represents a landmark in the environment map.
- * Landmarks are identified and updated by the FusionSlam service.
- */
-public class LandMark {
-    // TODO: Define fields and methods.
-}
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents a landmark in the environment map.
+ * Landmarks are identified and updated by the FusionSlam service.
+ * <p>
+ * Coordinates are global and kept in two primitive arrays, along with their centroid,
+ * which FusionSlam uses to index the landmark by position.
+ */
+public class LandMark {
+    private final String id;
+    private final String description;
+    private double[] x;
+    private double[] y;
+    private int size;
+    private double centroidX;
+    private double centroidY;
+    boolean changed; // Listed in FusionSlam's changed landmarks
+    boolean changedSinceCheckpoint; // Listed in FusionSlam's landmarks changed since the last checkpoint
+    private boolean shared; // The arrays are referenced by a checkpoint, copy them before changing them
+
+    /**
+     * @param id          the id of the landmark
+     * @param description its description
+     * @param x           the global x coordinates of its points, copied
+     * @param y           the global y coordinates of its points, copied
+     * @param length      the number of points to take from {@code x} and {@code y}
+     */
+    public LandMark(String id, String description, double[] x, double[] y, int length) {
+        this.id = id;
+        this.description = description;
+        this.x = Arrays.copyOf(x, length);
+        this.y = Arrays.copyOf(y, length);
+        this.size = length;
+        updateCentroid();
+    }
+
+    /**
+     * Merges a new observation into the landmark: points it shares with the
+     * observation are averaged, extra points of the observation are added.
+     *
+     * @param x      the global x coordinates of the observed points
+     * @param y      the global y coordinates of the observed points
+     * @param length the number of points to take from {@code x} and {@code y}
+     */
+    public void update(double[] x, double[] y, int length) {
+        if (shared) {
+            this.x = Arrays.copyOf(this.x, size);
+            this.y = Arrays.copyOf(this.y, size);
+            shared = false;
+        }
+        int common = Math.min(size, length);
+        for (int i = 0; i < common; i++) {
+            this.x[i] = (this.x[i] + x[i]) / 2;
+            this.y[i] = (this.y[i] + y[i]) / 2;
+        }
+        if (length > size) {
+            this.x = Arrays.copyOf(this.x, length);
+            this.y = Arrays.copyOf(this.y, length);
+            System.arraycopy(x, size, this.x, size, length - size);
+            System.arraycopy(y, size, this.y, size, length - size);
+            size = length;
+        }
+        updateCentroid();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX(int point) {
+        return x[point];
+    }
+
+    public double getY(int point) {
+        return y[point];
+    }
+
+    /**
+     * Lets a checkpoint keep the current coordinate arrays: until the next update, they
+     * are no longer changed, the update copies them first.
+     */
+    void share() {
+        shared = true;
+    }
+
+    // The coordinate arrays themselves, only the first size() points are used
+    double[] x() {
+        return x;
+    }
+
+    double[] y() {
+        return y;
+    }
+
+    public double getCentroidX() {
+        return centroidX;
+    }
+
+    public double getCentroidY() {
+        return centroidY;
+    }
+
+    /**
+     * @return the coordinates as new CloudPoint objects
+     */
+    public List<CloudPoint> getCoordinates() {
+        List<CloudPoint> coordinates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            coordinates.add(new CloudPoint(x[i], y[i]));
+        }
+        return coordinates;
+    }
+
+    private void updateCentroid() {
+        double sumX = 0;
+        double sumY = 0;
+        for (int i = 0; i < size; i++) {
+            sumX += x[i];
+            sumY += y[i];
+        }
+        centroidX = size == 0 ? 0 : sumX / size;
+        centroidY = size == 0 ? 0 : sumY / size;
+    }
+
+    @Override
+    public String toString() {
+        return "LandMark: {ID: " + id + ", Description: " + description + ", Points: " + size + "}";
+    }
+}
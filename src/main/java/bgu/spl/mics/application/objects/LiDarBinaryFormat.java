@@ -0,0 +1,267 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary form of lidar_data.json that {@link LiDarDataBase} memory-maps
+ * instead of parsing. All numbers are little-endian. The file is laid out as:
+ * <pre>
+ * header          64 bytes, see the HEADER_ constants
+ * point blocks    per block: x[n], y[n], z[n] as floats; a record's points never span blocks
+ * string offsets  per id: int offset of the id in the string data
+ * string data     per id: int length, then that many UTF-8 bytes
+ * records         per record, in file order: int time, int id, int block, int first point, int point count
+ * hash index      power-of-two slots of int (record + 1), 0 for empty, linear probing on hash(id, time)
+ * block table     per block: long position, int point count, int unused
+ * </pre>
+ * Everything after the point blocks is small and is mapped when the file is opened;
+ * point blocks are mapped the first time they are read.
+ */
+public final class LiDarBinaryFormat {
+    static final int MAGIC = 0x5244494C; // "LIDR" read as a little-endian int
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int HEADER_ID_COUNT = 8;
+    static final int HEADER_RECORD_COUNT = 12;
+    static final int HEADER_BLOCK_COUNT = 16;
+    static final int HEADER_HASH_SLOTS = 20;
+    static final int HEADER_STRING_OFFSETS = 24;
+    static final int HEADER_STRING_DATA = 32;
+    static final int HEADER_RECORDS = 40;
+    static final int HEADER_HASH = 48;
+    static final int HEADER_BLOCKS = 56;
+    static final int RECORD_SIZE = 20;
+    static final int BLOCK_ENTRY_SIZE = 16;
+    // Points per block; about 12 MB of floats
+    static final int BLOCK_POINTS = 1 << 20;
+
+    private LiDarBinaryFormat() {
+    }
+
+    /**
+     * @return the hash index slot to start probing at for the given key
+     */
+    static int hash(String id, int time, int slots) {
+        int h = id.hashCode() * 0x9E3779B9 + time;
+        return (h ^ (h >>> 16)) & (slots - 1);
+    }
+
+    /**
+     * @param filePath the path of a LiDAR data file
+     * @return true if the file starts like a file written by {@link #convert(String, String)}
+     */
+    public static boolean isBinaryFile(String filePath) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            return channel.read(magic, 0) == 4 && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Converts a lidar_data.json file into the binary format, streaming through it
+     * so only one block of points is held in memory at a time.
+     * Coordinates are stored as floats.
+     *
+     * @param jsonPath   the JSON file to read
+     * @param binaryPath the binary file to write, replaced if it exists
+     * @throws IOException if either file cannot be accessed or the JSON is malformed
+     */
+    public static void convert(String jsonPath, String binaryPath) throws IOException {
+        try (LiDarJsonReader reader = new LiDarJsonReader(jsonPath);
+             FileChannel out = FileChannel.open(Paths.get(binaryPath), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            new Writer(out).write(reader);
+        }
+    }
+
+    /**
+     * Writes one file. Record metadata is kept in primitive arrays until the end,
+     * point blocks are written as soon as they fill up.
+     */
+    private static final class Writer {
+        private final FileChannel out;
+        private long position = HEADER_SIZE;
+
+        private final Map<String, Integer> idIndex = new HashMap<>();
+        private final List<String> ids = new ArrayList<>();
+        private int[] records = new int[5 * 1024]; // time, id, block, first point, count
+        private int recordCount = 0;
+        private long[] blockPositions = new long[16];
+        private int[] blockPoints = new int[16];
+        private int blockCount = 0;
+
+        private float[] x = new float[BLOCK_POINTS];
+        private float[] y = new float[BLOCK_POINTS];
+        private float[] z = new float[BLOCK_POINTS];
+        private int used = 0; // Points in the current block
+
+        private Writer(FileChannel out) {
+            this.out = out;
+        }
+
+        private void write(LiDarJsonReader reader) throws IOException {
+            while (reader.next()) {
+                addRecord(reader);
+            }
+            flushBlock();
+            long stringOffsets = position;
+            writeStrings();
+            long recordsPosition = position;
+            writeRecords();
+            long hashPosition = position;
+            int slots = writeHashIndex();
+            long blocksPosition = position;
+            writeBlockTable();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, MAGIC).putInt(4, VERSION)
+                    .putInt(HEADER_ID_COUNT, ids.size()).putInt(HEADER_RECORD_COUNT, recordCount)
+                    .putInt(HEADER_BLOCK_COUNT, blockCount).putInt(HEADER_HASH_SLOTS, slots)
+                    .putLong(HEADER_STRING_OFFSETS, stringOffsets).putLong(HEADER_STRING_DATA, stringOffsets + 4L * ids.size())
+                    .putLong(HEADER_RECORDS, recordsPosition).putLong(HEADER_HASH, hashPosition)
+                    .putLong(HEADER_BLOCKS, blocksPosition);
+            writeFully(header, 0);
+        }
+
+        private void addRecord(LiDarJsonReader reader) throws IOException {
+            int points = reader.getPointCount();
+            if (used + points > x.length) {
+                flushBlock();
+                if (points > x.length) { // Gets a block of its own
+                    x = new float[points];
+                    y = new float[points];
+                    z = new float[points];
+                }
+            }
+            for (int i = 0; i < points; i++) {
+                x[used + i] = (float) reader.getX(i);
+                y[used + i] = (float) reader.getY(i);
+                z[used + i] = (float) reader.getZ(i);
+            }
+            Integer id = idIndex.get(reader.getId());
+            if (id == null) {
+                id = ids.size();
+                idIndex.put(reader.getId(), id);
+                ids.add(reader.getId());
+            }
+            if (5 * (recordCount + 1) > records.length) {
+                records = Arrays.copyOf(records, records.length * 2);
+            }
+            int base = 5 * recordCount++;
+            records[base] = reader.getTime();
+            records[base + 1] = id;
+            records[base + 2] = blockCount; // The block being filled gets this index when flushed
+            records[base + 3] = used;
+            records[base + 4] = points;
+            used += points;
+        }
+
+        private void flushBlock() throws IOException {
+            if (used == 0) {
+                return;
+            }
+            if (blockCount == blockPositions.length) {
+                blockPositions = Arrays.copyOf(blockPositions, blockCount * 2);
+                blockPoints = Arrays.copyOf(blockPoints, blockCount * 2);
+            }
+            blockPositions[blockCount] = position;
+            blockPoints[blockCount] = used;
+            blockCount++;
+            ByteBuffer buffer = ByteBuffer.allocate(4 * used).order(ByteOrder.LITTLE_ENDIAN);
+            for (float[] column : new float[][]{x, y, z}) {
+                ((Buffer) buffer).clear(); // Buffer's method, which Java 8 also has
+                buffer.asFloatBuffer().put(column, 0, used);
+                append(buffer);
+            }
+            used = 0;
+            if (x.length > BLOCK_POINTS) {
+                x = new float[BLOCK_POINTS];
+                y = new float[BLOCK_POINTS];
+                z = new float[BLOCK_POINTS];
+            }
+        }
+
+        private void writeStrings() throws IOException {
+            List<byte[]> encoded = new ArrayList<>(ids.size());
+            ByteBuffer offsets = ByteBuffer.allocate(4 * ids.size()).order(ByteOrder.LITTLE_ENDIAN);
+            int offset = 0;
+            for (String id : ids) {
+                byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                offsets.putInt(offset);
+                offset += 4 + bytes.length;
+            }
+            ((Buffer) offsets).flip();
+            append(offsets);
+            ByteBuffer data = ByteBuffer.allocate(offset).order(ByteOrder.LITTLE_ENDIAN);
+            for (byte[] bytes : encoded) {
+                data.putInt(bytes.length).put(bytes);
+            }
+            ((Buffer) data).flip();
+            append(data);
+        }
+
+        private void writeRecords() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * recordCount).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.asIntBuffer().put(records, 0, 5 * recordCount);
+            append(buffer);
+        }
+
+        private int writeHashIndex() throws IOException {
+            int slots = Integer.highestOneBit(Math.max(2 * recordCount, 2) - 1) << 1; // Load factor at most 1/2
+            int[] table = new int[slots];
+            for (int record = 0; record < recordCount; record++) {
+                int time = records[5 * record];
+                int id = records[5 * record + 1];
+                int slot = hash(ids.get(id), time, slots);
+                while (table[slot] != 0) {
+                    int other = table[slot] - 1;
+                    if (records[5 * other] == time && records[5 * other + 1] == id) {
+                        break; // A later record for the same key replaces the earlier one
+                    }
+                    slot = (slot + 1) & (slots - 1);
+                }
+                table[slot] = record + 1;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(4 * slots).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.asIntBuffer().put(table);
+            append(buffer);
+            return slots;
+        }
+
+        private void writeBlockTable() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(BLOCK_ENTRY_SIZE * blockCount).order(ByteOrder.LITTLE_ENDIAN);
+            for (int block = 0; block < blockCount; block++) {
+                buffer.putLong(blockPositions[block]).putInt(blockPoints[block]).putInt(0);
+            }
+            ((Buffer) buffer).flip();
+            append(buffer);
+        }
+
+        private void append(ByteBuffer buffer) throws IOException {
+            position += writeFully(buffer, position);
+        }
+
+        private int writeFully(ByteBuffer buffer, long at) throws IOException {
+            int length = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                at += out.write(buffer, at);
+            }
+            return length;
+        }
+    }
+}
@@ -1,19 +1,376 @@
 package bgu.spl.mics.application.objects;
 
+import bgu.spl.mics.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
 /**
  * LiDarDataBase is a singleton class responsible for managing LiDAR data.
  * It provides access to cloud point data and other relevant information for tracked objects.
+ * <p>
+ * The data file is streamed record by record on a background thread. Lookups wait
+ * until the whole file has been read, unless the recording is declared ordered by
+ * time: then lookups for early timestamps are answered while later parts of the file
+ * are still being read. If a declared recording goes back in time anyway, lookups wait
+ * for the whole file from then on, and a warning tells that earlier answers may have
+ * missed records. Points are packed into a few {@link CloudPointStorage} chunks that
+ * the records refer to.
+ * <p>
+ * A file converted with {@link LiDarBinaryFormat} is memory-mapped instead: it is
+ * available as soon as it is opened and lookups read straight from the mapping.
+ * <p>
+ * Lookups by (id, time) are hash lookups that take no lock once the loader has read
+ * past the requested time. The first lookup of each record counts it as consumed, so
+ * {@link #isExhausted()} tells when every record has been used without scanning.
  */
 public class LiDarDataBase {
+    private static volatile LiDarDataBase instance = null;
+    // Chunks start small so short recordings stay small, and double up to this many points
+    private static final int FIRST_CHUNK_POINTS = 1024;
+    private static final int MAX_CHUNK_POINTS = 1 << 16;
+
+    private final CloudPointStorage.Kind storageKind;
+    private final MappedLiDarRecording mapped; // Null unless the data file is binary
+    private final boolean timeOrdered; // Whether lookups may be answered before the file is read
+
+    private final Object lock = new Object(); // Waited on until the loader reads far enough
+    private final List<StampedCloudPoints> cloudPoints = new ArrayList<>(); // Guarded by lock, in file order
+    private final ConcurrentHashMap<RecordKey, Record> byIdAndTime = new ConcurrentHashMap<>();
+    // Written by the loader after the records they cover are in byIdAndTime
+    private volatile int loadedBefore = Integer.MIN_VALUE; // Every record with a smaller time was read
+    private volatile boolean ordered = true;
+    private volatile boolean loaded = false;
+    private volatile IOException loadError = null;
+    private volatile int recordCount = 0;
+
+    private final AtomicInteger consumedCount = new AtomicInteger();
+    private final AtomicLongArray consumedMapped; // One bit per mapped record, null for JSON files
+    // Records consumed since the last checkpoint, null unless checkpoints are taken
+    private volatile Queue<RecordKey> newlyConsumed;
+
+    // Used by the loader thread only
+    private CloudPointStorage chunk = null;
+    private int chunkUsed = 0;
+
+    private LiDarDataBase(CloudPointStorage.Kind storageKind, MappedLiDarRecording mapped, boolean timeOrdered) {
+        this.storageKind = storageKind;
+        this.mapped = mapped;
+        this.timeOrdered = timeOrdered;
+        if (mapped != null) {
+            recordCount = mapped.getRecordCount();
+            consumedMapped = new AtomicLongArray((recordCount + 63) / 64);
+            loaded = true;
+        } else {
+            consumedMapped = null;
+        }
+    }
 
     /**
      * Returns the singleton instance of LiDarDataBase.
+     * The first call starts loading {@code filePath} in the background, later calls
+     * return the same instance whatever path they pass. A binary data file is mapped
+     * rather than loaded.
      *
      * @param filePath The path to the LiDAR data file.
      * @return The singleton instance of LiDarDataBase.
      */
     public static LiDarDataBase getInstance(String filePath) {
-        // TODO: Implement this
-        return null;
+        return getInstance(filePath, CloudPointStorage.Kind.HEAP_DOUBLE, false);
+    }
+
+    /**
+     * Returns the singleton instance of LiDarDataBase, keeping the points as
+     * {@code storageKind} if this call creates it. The storage kind does not apply to a
+     * binary data file, whose points stay in the mapping.
+     *
+     * @param filePath    The path to the LiDAR data file.
+     * @param storageKind How to keep the cloud points in memory.
+     * @param timeOrdered Whether a JSON data file is known to be ordered by time, so
+     *                    lookups can be answered before the whole file is read.
+     * @return The singleton instance of LiDarDataBase.
+     */
+    public static LiDarDataBase getInstance(String filePath, CloudPointStorage.Kind storageKind, boolean timeOrdered) {
+        if (instance == null) {
+            synchronized (LiDarDataBase.class) {
+                if (instance == null) {
+                    instance = open(filePath, storageKind, timeOrdered);
+                }
+            }
+        }
+        return instance;
+    }
+
+    // A new database reading filePath, for getInstance and for benchmarks that need several
+    static LiDarDataBase open(String filePath, CloudPointStorage.Kind storageKind, boolean timeOrdered) {
+        if (LiDarBinaryFormat.isBinaryFile(filePath)) {
+            return mapped(filePath, storageKind);
+        }
+        LiDarDataBase dataBase = new LiDarDataBase(storageKind, null, timeOrdered);
+        Thread loader = new Thread(() -> dataBase.load(filePath), "LiDarDataBase-loader");
+        loader.setDaemon(true);
+        loader.start();
+        return dataBase;
+    }
+
+    /**
+     * Returns the cloud points recorded for object {@code id} at {@code time}, waiting
+     * until the loader has read that far into the file. The record counts as consumed.
+     *
+     * @param id   the object id
+     * @param time the time of the recording
+     * @return the matching cloud points, or null if the file has no such record
+     * @throws IllegalStateException if the data file could not be read
+     */
+    public StampedCloudPoints getCloudPoints(String id, int time) {
+        if (mapped != null) {
+            int record = mapped.indexOf(id, time);
+            if (record < 0) {
+                return null;
+            }
+            if (consumeMapped(record)) {
+                logConsumed(id, time);
+            }
+            return mapped.get(record);
+        }
+        if (!isLoaded(time)) {
+            synchronized (lock) {
+                awaitLoaded(time);
+            }
+        }
+        checkLoadError();
+        Record record = byIdAndTime.get(new RecordKey(id, time));
+        if (record == null) {
+            return null;
+        }
+        if (record.consumed == 0 && Record.CONSUMED.compareAndSet(record, 0, 1)) {
+            consumedCount.incrementAndGet();
+            logConsumed(id, time);
+        }
+        return record.points;
+    }
+
+    /**
+     * @return the number of records read from the data file so far
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the number of distinct records returned by {@link #getCloudPoints(String, int)}
+     */
+    public int getConsumedCount() {
+        return consumedCount.get();
+    }
+
+    /**
+     * @return true if the whole data file was read and every record in it was consumed
+     */
+    public boolean isExhausted() {
+        return loaded && consumedCount.get() >= recordCount;
+    }
+
+    /**
+     * Returns every record in the data file, waiting until it has been read entirely.
+     *
+     * @return the records in file order
+     * @throws IllegalStateException if the data file could not be read
+     */
+    public List<StampedCloudPoints> getCloudPoints() {
+        if (mapped != null) {
+            List<StampedCloudPoints> all = new ArrayList<>(mapped.getRecordCount());
+            for (int record = 0; record < mapped.getRecordCount(); record++) {
+                all.add(mapped.get(record));
+            }
+            return all;
+        }
+        synchronized (lock) {
+            awaitLoaded(Integer.MAX_VALUE);
+            return new ArrayList<>(cloudPoints);
+        }
+    }
+
+    /**
+     * Starts listing the records consumed from now on, see {@link #takeConsumed(BiConsumer)}.
+     * Records consumed earlier, such as those a checkpoint restored, are not listed.
+     */
+    void trackConsumed() {
+        if (newlyConsumed == null) {
+            newlyConsumed = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Passes the id and time of every record consumed since the previous call to
+     * {@code consumer}, for checkpoints; none if consumption is not tracked.
+     */
+    void takeConsumed(BiConsumer<String, Integer> consumer) {
+        Queue<RecordKey> consumed = newlyConsumed;
+        if (consumed == null) {
+            return;
+        }
+        for (RecordKey key; (key = consumed.poll()) != null; ) {
+            consumer.accept(key.id, key.time);
+        }
+    }
+
+    private boolean isLoaded(int time) {
+        return loaded || (timeOrdered && ordered && time < loadedBefore);
+    }
+
+    // Waits, holding lock, until every record with the given time has been read
+    private void awaitLoaded(int time) {
+        boolean interrupted = false;
+        while (!isLoaded(time)) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true; // Keep waiting, the answer would be wrong otherwise
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        checkLoadError();
+    }
+
+    private void checkLoadError() {
+        if (loadError != null) {
+            throw new IllegalStateException("Failed to load LiDAR data: " + loadError.getMessage(), loadError);
+        }
+    }
+
+    private static LiDarDataBase mapped(String filePath, CloudPointStorage.Kind storageKind) {
+        try {
+            return new LiDarDataBase(storageKind, MappedLiDarRecording.open(filePath), true);
+        } catch (IOException e) {
+            LiDarDataBase failed = new LiDarDataBase(storageKind, null, false);
+            failed.loadError = e;
+            failed.loaded = true;
+            return failed;
+        }
+    }
+
+    private void load(String filePath) {
+        try (LiDarJsonReader reader = new LiDarJsonReader(filePath)) {
+            while (reader.next()) {
+                add(store(reader));
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (lock) {
+                loadError = e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+            }
+        } finally {
+            synchronized (lock) {
+                loaded = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Returns whether this call consumed the record
+    private boolean consumeMapped(int record) {
+        long bit = 1L << record;
+        int word = record >>> 6;
+        long bits;
+        do {
+            bits = consumedMapped.get(word);
+            if ((bits & bit) != 0) {
+                return false;
+            }
+        } while (!consumedMapped.compareAndSet(word, bits, bits | bit));
+        consumedCount.incrementAndGet();
+        return true;
+    }
+
+    private void logConsumed(String id, int time) {
+        Queue<RecordKey> consumed = newlyConsumed;
+        if (consumed != null) {
+            consumed.add(new RecordKey(id, time));
+        }
+    }
+
+    private void add(StampedCloudPoints record) {
+        // A later record for the same key replaces the earlier one, as in the binary format
+        Record previous = byIdAndTime.put(new RecordKey(record.getId(), record.getTime()), new Record(record));
+        if (previous == null) {
+            recordCount++; // Only the loader writes it
+        } else if (previous.consumed != 0) {
+            consumedCount.decrementAndGet();
+        }
+        synchronized (lock) {
+            cloudPoints.add(record);
+            if (record.getTime() < loadedBefore) {
+                if (ordered && timeOrdered) {
+                    Log.warn("LiDAR data declared ordered by time goes back from time " + loadedBefore + " to "
+                            + record.getTime() + "; lookups answered until now may have missed records");
+                }
+                ordered = false;
+            } else if (record.getTime() > loadedBefore) {
+                loadedBefore = record.getTime();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Copies the points of the current record into the current chunk, starting a new chunk if they do not fit
+    private StampedCloudPoints store(LiDarJsonReader reader) {
+        int points = reader.getPointCount();
+        if (chunk == null || chunkUsed + points > chunk.capacity()) {
+            int capacity = chunk == null ? FIRST_CHUNK_POINTS : Math.min(chunk.capacity() * 2, MAX_CHUNK_POINTS);
+            chunk = CloudPointStorage.allocate(storageKind, Math.max(capacity, points));
+            chunkUsed = 0;
+        }
+        for (int i = 0; i < points; i++) {
+            chunk.set(chunkUsed + i, reader.getX(i), reader.getY(i), reader.getZ(i));
+        }
+        StampedCloudPoints record = new StampedCloudPoints(reader.getId(), reader.getTime(), chunk, chunkUsed, points);
+        chunkUsed += points;
+        return record;
+    }
+
+    private static final class RecordKey {
+        private final String id;
+        private final int time;
+
+        private RecordKey(String id, int time) {
+            this.id = id;
+            this.time = time;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RecordKey)) {
+                return false;
+            }
+            RecordKey other = (RecordKey) o;
+            return time == other.time && id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode() * 31 + time;
+        }
+    }
+
+    private static final class Record {
+        private static final AtomicIntegerFieldUpdater<Record> CONSUMED =
+                AtomicIntegerFieldUpdater.newUpdater(Record.class, "consumed");
+
+        private final StampedCloudPoints points;
+        private volatile int consumed = 0;
+
+        private Record(StampedCloudPoints points) {
+            this.points = points;
+        }
     }
 }
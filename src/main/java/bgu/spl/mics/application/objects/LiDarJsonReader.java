@@ -0,0 +1,128 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Streams the records of a lidar_data.json file one at a time:
+ * {@code [{"time": t, "id": s, "cloudPoints": [[x, y, z], ...]}, ...]}.
+ * The coordinates of the current record are kept in a reused primitive buffer,
+ * so no per-point objects or JSON tree are built.
+ */
+final class LiDarJsonReader implements Closeable {
+    private final JsonReader reader;
+    private double[] coordinates = new double[3 * 64]; // x, y, z triples of the current record
+    private int size = 0; // Number of coordinates in use
+    private String id;
+    private int time;
+
+    LiDarJsonReader(String filePath) throws IOException {
+        this.reader = new JsonReader(Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8));
+        reader.beginArray();
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return false once the end of the file was reached
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    boolean next() throws IOException {
+        if (!reader.hasNext()) {
+            reader.endArray();
+            return false;
+        }
+        id = null;
+        time = 0;
+        size = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextString().intern(); // Every recording of an object shares one id string
+                    break;
+                case "time":
+                    time = reader.nextInt();
+                    break;
+                case "cloudPoints":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readPoint();
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (id == null) {
+            throw new IOException("LiDAR record without an id at " + reader.getPath());
+        }
+        return true;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    int getTime() {
+        return time;
+    }
+
+    int getPointCount() {
+        return size / 3;
+    }
+
+    double getX(int point) {
+        return coordinates[3 * point];
+    }
+
+    double getY(int point) {
+        return coordinates[3 * point + 1];
+    }
+
+    double getZ(int point) {
+        return coordinates[3 * point + 2];
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Reads [x, y] or [x, y, z]; a missing z is stored as 0
+    private void readPoint() throws IOException {
+        reader.beginArray();
+        int read = 0;
+        while (reader.hasNext()) {
+            if (read < 3 && reader.peek() == JsonToken.NUMBER) {
+                add(reader.nextDouble());
+                read++;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        if (read < 2) {
+            throw new IOException("LiDAR point with fewer than two coordinates at " + reader.getPath());
+        }
+        if (read == 2) {
+            add(0);
+        }
+    }
+
+    private void add(double value) {
+        if (size == coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+        }
+        coordinates[size++] = value;
+    }
+}
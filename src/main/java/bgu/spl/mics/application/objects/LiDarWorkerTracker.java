@@ -1,11 +1,195 @@
-package bgu.spl.mics.application.objects;
-
-/**
- * LiDarWorkerTracker is responsible for managing a LiDAR worker.
- * It processes DetectObjectsEvents and generates TrackedObjectsEvents by using data from the LiDarDataBase.
- * Each worker tracks objects and sends observations to the FusionSlam service.
- */
-public class LiDarWorkerTracker {
-
-    // TODO: Define fields and methods.
-}
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * LiDarWorkerTracker is responsible for managing a LiDAR worker.
+ * It processes DetectObjectsEvents and generates TrackedObjectsEvents by using data from the LiDarDataBase.
+ * Each worker tracks objects and sends observations to the FusionSlam service.
+ * <p>
+ * An object detected at time t is sent at tick t + frequency. Tracked objects wait in a
+ * min-heap ordered by that tick, so each tick only looks at the objects it releases.
+ * The whole detection event is converted at once; with a pool, large events are
+ * converted on it in parallel. Not thread-safe, each worker belongs to one service.
+ */
+public class LiDarWorkerTracker {
+    // Below this many objects an event is converted on the calling thread
+    private static final int PARALLEL_THRESHOLD = 16;
+
+    private final int id;
+    private final int frequency;
+    private final LiDarDataBase dataBase;
+    private final ForkJoinPool pool; // Null to convert on the calling thread
+    // Ordered by time, which orders by release tick as well since the frequency is fixed
+    private final PriorityQueue<TrackedObject> releaseQueue =
+            new PriorityQueue<>(Comparator.comparingInt(TrackedObject::getTime));
+    private STATUS status = STATUS.UP;
+    private List<TrackedObject> lastTrackedObjects = Collections.emptyList();
+
+    /**
+     * @param id        the id of the worker
+     * @param frequency the number of ticks between detecting an object and sending it
+     * @param dataBase  the recording to read cloud points from
+     */
+    public LiDarWorkerTracker(int id, int frequency, LiDarDataBase dataBase) {
+        this(id, frequency, dataBase, null);
+    }
+
+    /**
+     * @param id        the id of the worker
+     * @param frequency the number of ticks between detecting an object and sending it
+     * @param dataBase  the recording to read cloud points from
+     * @param pool      the pool to convert large events on, shared by all workers, or null
+     */
+    public LiDarWorkerTracker(int id, int frequency, LiDarDataBase dataBase, ForkJoinPool pool) {
+        this.id = id;
+        this.frequency = frequency;
+        this.dataBase = dataBase;
+        this.pool = pool;
+    }
+
+    /**
+     * Looks up the cloud points of every detected object and queues the results for
+     * release. Objects without a recording are skipped.
+     *
+     * @param detections  the detections of one DetectObjectsEvent
+     * @param currentTick the current tick
+     * @return the tracked objects due at {@code currentTick}, possibly including earlier ones
+     */
+    public List<TrackedObject> track(List<StampedDetectedObjects> detections, int currentTick) {
+        int count = 0;
+        for (StampedDetectedObjects stamped : detections) {
+            count += stamped.getDetectedObjects().size();
+        }
+        int[] times = new int[count];
+        DetectedObject[] objects = new DetectedObject[count];
+        int next = 0;
+        for (StampedDetectedObjects stamped : detections) {
+            for (DetectedObject detectedObject : stamped.getDetectedObjects()) {
+                times[next] = stamped.getTime();
+                objects[next++] = detectedObject;
+            }
+        }
+        TrackedObject[] tracked = new TrackedObject[count];
+        if (pool != null && count >= PARALLEL_THRESHOLD) {
+            pool.invoke(new ConvertTask(dataBase, times, objects, tracked, 0, count));
+        } else {
+            convert(dataBase, times, objects, tracked, 0, count);
+        }
+        for (TrackedObject trackedObject : tracked) {
+            if (trackedObject != null) {
+                releaseQueue.add(trackedObject);
+            }
+        }
+        return release(currentTick);
+    }
+
+    /**
+     * @param currentTick the current tick
+     * @return the tracked objects due at {@code currentTick} that were not released yet, by time
+     */
+    public List<TrackedObject> release(int currentTick) {
+        if (releaseQueue.isEmpty() || releaseQueue.peek().getTime() + frequency > currentTick) {
+            return Collections.emptyList();
+        }
+        List<TrackedObject> released = new ArrayList<>();
+        while (!releaseQueue.isEmpty() && releaseQueue.peek().getTime() + frequency <= currentTick) {
+            released.add(releaseQueue.poll());
+        }
+        lastTrackedObjects = released;
+        return released;
+    }
+
+    /**
+     * @return true if some tracked objects were not released yet
+     */
+    public boolean hasPendingObjects() {
+        return !releaseQueue.isEmpty();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getFrequency() {
+        return frequency;
+    }
+
+    public STATUS getStatus() {
+        return status;
+    }
+
+    public void setStatus(STATUS status) {
+        this.status = status;
+    }
+
+    /**
+     * @return the objects released by the last call that released any
+     */
+    public List<TrackedObject> getLastTrackedObjects() {
+        return lastTrackedObjects;
+    }
+
+    /**
+     * @return the tracked objects that were not released yet, in no particular order
+     */
+    List<TrackedObject> getPendingObjects() {
+        return new ArrayList<>(releaseQueue);
+    }
+
+    /**
+     * Continues from a checkpoint: queues objects that were tracked but not released.
+     */
+    void restorePendingObjects(List<TrackedObject> pending) {
+        releaseQueue.addAll(pending);
+    }
+
+    private static void convert(LiDarDataBase dataBase, int[] times, DetectedObject[] objects, TrackedObject[] tracked,
+                                int from, int to) {
+        for (int i = from; i < to; i++) {
+            StampedCloudPoints cloudPoints = dataBase.getCloudPoints(objects[i].getId(), times[i]);
+            if (cloudPoints != null) {
+                tracked[i] = TrackedObject.of(objects[i], cloudPoints);
+            }
+        }
+    }
+
+    // Splits the range in halves down to PARALLEL_THRESHOLD objects
+    private static final class ConvertTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final LiDarDataBase dataBase;
+        private final int[] times;
+        private final DetectedObject[] objects;
+        private final TrackedObject[] tracked;
+        private final int from;
+        private final int to;
+
+        private ConvertTask(LiDarDataBase dataBase, int[] times, DetectedObject[] objects, TrackedObject[] tracked,
+                            int from, int to) {
+            this.dataBase = dataBase;
+            this.times = times;
+            this.objects = objects;
+            this.tracked = tracked;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                convert(dataBase, times, objects, tracked, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ConvertTask(dataBase, times, objects, tracked, from, middle),
+                    new ConvertTask(dataBase, times, objects, tracked, middle, to));
+        }
+    }
+}
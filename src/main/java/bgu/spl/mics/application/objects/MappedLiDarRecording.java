@@ -0,0 +1,161 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A LiDAR recording in {@link LiDarBinaryFormat}, memory-mapped read-only.
+ * Opening it only maps the index, so it takes about the same time whatever the size
+ * of the recording. Point blocks are mapped on first use and the cloud points handed
+ * out are views of the mapping, so reading them copies nothing and the OS page cache
+ * is shared by every process reading the same file. Safe for concurrent readers.
+ */
+final class MappedLiDarRecording implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer index; // Everything after the point blocks
+    private final long indexPosition;
+    private final int idCount;
+    private final int recordCount;
+    private final int hashSlots;
+    private final int stringOffsets;
+    private final int stringData;
+    private final int records;
+    private final int hash;
+    private final int blocks;
+    private final String[] ids; // Decoded lazily; racy but safe since String is immutable
+    private final AtomicReferenceArray<CloudPointStorage> mappedBlocks;
+
+    private MappedLiDarRecording(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, LiDarBinaryFormat.HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != LiDarBinaryFormat.MAGIC || header.getInt(4) != LiDarBinaryFormat.VERSION) {
+            throw new IOException("Not a LiDAR binary file of version " + LiDarBinaryFormat.VERSION);
+        }
+        idCount = header.getInt(LiDarBinaryFormat.HEADER_ID_COUNT);
+        recordCount = header.getInt(LiDarBinaryFormat.HEADER_RECORD_COUNT);
+        hashSlots = header.getInt(LiDarBinaryFormat.HEADER_HASH_SLOTS);
+        indexPosition = header.getLong(LiDarBinaryFormat.HEADER_STRING_OFFSETS);
+        long indexSize = channel.size() - indexPosition;
+        if (indexSize > Integer.MAX_VALUE) {
+            throw new IOException("LiDAR binary index larger than 2 GB is not supported");
+        }
+        index = channel.map(FileChannel.MapMode.READ_ONLY, indexPosition, indexSize).order(ByteOrder.LITTLE_ENDIAN);
+        stringOffsets = 0;
+        stringData = relative(header.getLong(LiDarBinaryFormat.HEADER_STRING_DATA));
+        records = relative(header.getLong(LiDarBinaryFormat.HEADER_RECORDS));
+        hash = relative(header.getLong(LiDarBinaryFormat.HEADER_HASH));
+        blocks = relative(header.getLong(LiDarBinaryFormat.HEADER_BLOCKS));
+        ids = new String[idCount];
+        mappedBlocks = new AtomicReferenceArray<>(header.getInt(LiDarBinaryFormat.HEADER_BLOCK_COUNT));
+    }
+
+    /**
+     * @param filePath the path of a file written by {@link LiDarBinaryFormat#convert(String, String)}
+     * @return the opened recording
+     * @throws IOException if the file cannot be mapped or is not in the binary format
+     */
+    static MappedLiDarRecording open(String filePath) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            return new MappedLiDarRecording(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the points recorded for {@code id} at {@code time}, or null if there are none
+     */
+    StampedCloudPoints find(String id, int time) {
+        int record = indexOf(id, time);
+        return record < 0 ? null : get(record);
+    }
+
+    /**
+     * @return the index of the record for {@code id} at {@code time}, or -1 if there is none
+     */
+    int indexOf(String id, int time) {
+        int slot = LiDarBinaryFormat.hash(id, time, hashSlots);
+        while (true) {
+            int entry = index.getInt(hash + 4 * slot);
+            if (entry == 0) {
+                return -1;
+            }
+            int record = entry - 1;
+            if (timeOf(record) == time && idOf(record).equals(id)) {
+                return record;
+            }
+            slot = (slot + 1) & (hashSlots - 1);
+        }
+    }
+
+    /**
+     * @param record the index of a record, in file order
+     * @return a view of the points of that record
+     */
+    StampedCloudPoints get(int record) {
+        int base = records + LiDarBinaryFormat.RECORD_SIZE * record;
+        return new StampedCloudPoints(idOf(record), index.getInt(base), block(index.getInt(base + 8)),
+                index.getInt(base + 12), index.getInt(base + 16));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close(); // Existing mappings stay valid until they are garbage collected
+    }
+
+    int timeOf(int record) {
+        return index.getInt(records + LiDarBinaryFormat.RECORD_SIZE * record);
+    }
+
+    String idOf(int record) {
+        int id = index.getInt(records + LiDarBinaryFormat.RECORD_SIZE * record + 4);
+        String decoded = ids[id];
+        if (decoded == null) {
+            int at = stringData + index.getInt(stringOffsets + 4 * id);
+            byte[] bytes = new byte[index.getInt(at)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = index.get(at + 4 + i);
+            }
+            decoded = new String(bytes, StandardCharsets.UTF_8).intern();
+            ids[id] = decoded;
+        }
+        return decoded;
+    }
+
+    private CloudPointStorage block(int block) {
+        CloudPointStorage storage = mappedBlocks.get(block);
+        if (storage == null) {
+            int entry = blocks + LiDarBinaryFormat.BLOCK_ENTRY_SIZE * block;
+            long position = index.getLong(entry);
+            int points = index.getInt(entry + 8);
+            try {
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, 12L * points);
+                storage = CloudPointStorage.view(mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer(), points);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to map LiDAR points: " + e.getMessage(), e);
+            }
+            if (!mappedBlocks.compareAndSet(block, null, storage)) {
+                storage = mappedBlocks.get(block); // Another reader mapped it first
+            }
+        }
+        return storage;
+    }
+
+    private int relative(long position) {
+        return (int) (position - indexPosition);
+    }
+}
@@ -0,0 +1,91 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The most recent poses of the robot, indexed by time in a ring buffer of primitive
+ * arrays. The pose of time t lives in slot t modulo the capacity, so adding and looking
+ * up a pose are O(1) and the history never grows. A pose is overwritten by the pose
+ * {@code capacity} ticks after it.
+ */
+final class PoseHistory {
+    private final int mask;
+    private final int[] times;
+    private final float[] x;
+    private final float[] y;
+    private final float[] yaw;
+    private int latestTime = Integer.MIN_VALUE;
+
+    /**
+     * @param capacity the number of poses kept, rounded up to a power of two
+     */
+    PoseHistory(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mask = size - 1;
+        times = new int[size];
+        x = new float[size];
+        y = new float[size];
+        yaw = new float[size];
+        Arrays.fill(times, Integer.MIN_VALUE);
+    }
+
+    void add(Pose pose) {
+        int slot = pose.getTime() & mask;
+        times[slot] = pose.getTime();
+        x[slot] = pose.getX();
+        y[slot] = pose.getY();
+        yaw[slot] = pose.getYaw();
+        latestTime = Math.max(latestTime, pose.getTime());
+    }
+
+    /**
+     * @return true if the pose of the given time is in the history
+     */
+    boolean contains(int time) {
+        return times[time & mask] == time;
+    }
+
+    /**
+     * @return the pose of the given time, or null if it is not in the history
+     */
+    Pose get(int time) {
+        int slot = time & mask;
+        return times[slot] == time ? new Pose(x[slot], y[slot], yaw[slot], time) : null;
+    }
+
+    /**
+     * Sets {@code transform} to the pose of the given time, which must be in the history.
+     */
+    void setPose(PoseTransform transform, int time) {
+        int slot = time & mask;
+        transform.setPose(x[slot], y[slot], yaw[slot]);
+    }
+
+    /**
+     * @return the latest time a pose was added for, or Integer.MIN_VALUE if none was
+     */
+    int getLatestTime() {
+        return latestTime;
+    }
+
+    /**
+     * @return a copy of the poses in the history, by time
+     */
+    List<Pose> getPoses() {
+        List<Pose> poses = new ArrayList<>();
+        for (int slot = 0; slot < times.length; slot++) {
+            if (times[slot] != Integer.MIN_VALUE) {
+                poses.add(new Pose(x[slot], y[slot], yaw[slot], times[slot]));
+            }
+        }
+        poses.sort(Comparator.comparingInt(Pose::getTime));
+        return poses;
+    }
+
+    int capacity() {
+        return times.length;
+    }
+}
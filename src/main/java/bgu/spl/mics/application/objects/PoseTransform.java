@@ -0,0 +1,90 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.Arrays;
+
+/**
+ * Moves points from the robot's frame at a pose into the global frame:
+ * x' = cos(yaw) * x - sin(yaw) * y + pose.x and y' = sin(yaw) * x + cos(yaw) * y + pose.y.
+ * <p>
+ * The sine and cosine are computed once per pose, and points are read from and written to
+ * primitive arrays in a branch-free loop the JIT can vectorize. An instance reuses its
+ * output buffers, so transforming allocates nothing once they are large enough.
+ * Not thread-safe; use one instance per thread.
+ */
+public final class PoseTransform {
+    private double cos = 1;
+    private double sin = 0;
+    private double translateX = 0;
+    private double translateY = 0;
+    private double[] outX = new double[64];
+    private double[] outY = new double[64];
+
+    /**
+     * Sets the pose the following transforms use.
+     *
+     * @return this transform
+     */
+    public PoseTransform setPose(Pose pose) {
+        return setPose(pose.getX(), pose.getY(), pose.getYaw());
+    }
+
+    /**
+     * Sets the pose the following transforms use.
+     *
+     * @param x          the x coordinate of the robot
+     * @param y          the y coordinate of the robot
+     * @param yawDegrees the yaw of the robot in degrees
+     * @return this transform
+     */
+    public PoseTransform setPose(double x, double y, double yawDegrees) {
+        double yaw = Math.toRadians(yawDegrees);
+        cos = Math.cos(yaw);
+        sin = Math.sin(yaw);
+        translateX = x;
+        translateY = y;
+        return this;
+    }
+
+    /**
+     * Transforms the points of a tracked object into the output buffers.
+     *
+     * @return the number of points written to {@link #getX()} and {@link #getY()}
+     */
+    public int apply(TrackedObject trackedObject) {
+        int length = trackedObject.size();
+        if (outX.length < length) {
+            outX = Arrays.copyOf(outX, Math.max(length, outX.length * 2));
+            outY = Arrays.copyOf(outY, outX.length);
+        }
+        transform(cos, sin, translateX, translateY, trackedObject.x(), trackedObject.y(), outX, outY, length);
+        return length;
+    }
+
+    /**
+     * @return the x coordinates written by the last {@link #apply(TrackedObject)}, valid until the next call
+     */
+    public double[] getX() {
+        return outX;
+    }
+
+    /**
+     * @return the y coordinates written by the last {@link #apply(TrackedObject)}, valid until the next call
+     */
+    public double[] getY() {
+        return outY;
+    }
+
+    /**
+     * Transforms {@code length} points from {@code x}, {@code y} into {@code outX}, {@code outY}.
+     * The output arrays may be the input arrays.
+     */
+    public static void transform(double cos, double sin, double translateX, double translateY,
+                                 double[] x, double[] y, double[] outX, double[] outY, int length) {
+        for (int i = 0; i < length; i++) {
+            double pointX = x[i];
+            double pointY = y[i];
+            outX[i] = cos * pointX - sin * pointY + translateX;
+            outY[i] = sin * pointX + cos * pointY + translateY;
+        }
+    }
+}
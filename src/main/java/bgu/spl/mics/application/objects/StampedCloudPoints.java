@@ -3,7 +3,71 @@ package bgu.spl.mics.application.objects;
 /**
  * Represents a group of cloud points corresponding to a specific timestamp.
  * Used by the LiDAR system to store and process point cloud data for tracked objects.
+ * <p>
+ * The points are a range of a shared {@link CloudPointStorage}, so a recording is held
+ * in a few large primitive columns instead of one object per point.
  */
 public class StampedCloudPoints {
-    // TODO: Define fields and methods.
+    private final String id;
+    private final int time;
+    private final CloudPointStorage storage;
+    private final int offset;
+    private final int size;
+
+    /**
+     * @param id      the id of the object the points belong to
+     * @param time    the time the points were recorded
+     * @param storage the storage holding the points
+     * @param offset  the index of the first point in {@code storage}
+     * @param size    the number of points
+     */
+    public StampedCloudPoints(String id, int time, CloudPointStorage storage, int offset, int size) {
+        if (offset < 0 || size < 0 || offset + size > storage.capacity()) {
+            throw new IllegalArgumentException("Points " + offset + ".." + (offset + size) + " are outside the storage");
+        }
+        this.id = id;
+        this.time = time;
+        this.storage = storage;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getTime() {
+        return time;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX(int point) {
+        return storage.getX(offset + point);
+    }
+
+    public double getY(int point) {
+        return storage.getY(offset + point);
+    }
+
+    public double getZ(int point) {
+        return storage.getZ(offset + point);
+    }
+
+    /**
+     * Copies the x and y coordinates of all points into the given arrays,
+     * which must hold at least {@link #size()} elements.
+     */
+    public void copyXY(double[] x, double[] y) {
+        storage.copyXY(offset, x, y, size);
+    }
+
+    /**
+     * @return a new CloudPoint with the x and y coordinates of the given point
+     */
+    public CloudPoint getCloudPoint(int point) {
+        return new CloudPoint(getX(point), getY(point));
+    }
 }
@@ -1,10 +1,232 @@
 package bgu.spl.mics.application.objects;
 
+import bgu.spl.mics.Mailbox;
+import bgu.spl.mics.MessageBusControl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
 /**
  * Holds statistical information about the system's operation.
  * This class aggregates metrics such as the runtime of the system,
  * the number of objects detected and tracked, and the number of landmarks identified.
+ * <p>
+ * Every counter is a {@link LongAdder}, so services on different cores update them
+ * without contending on one memory location. Besides the four counters of output.json,
+ * named counters can be added with {@link #counter(String)}, and sources of values kept
+ * elsewhere, such as the message bus, with {@link #addSource(Supplier)}. Those depend on
+ * timing, so they are written to a statistics file of their own rather than output.json.
  */
 public class StatisticalFolder {
-    // TODO: Define fields and methods for statistics tracking.
+    /** The prefix of the message bus counters of a service, {@code service.<key>.<counter>}. */
+    public static final String SERVICE_PREFIX = "service.";
+    /** The prefix of the message bus counts of messages sent, {@code bus.sent.<message type>}. */
+    public static final String SENT_PREFIX = "bus.sent.";
+
+    // How many times snapshot() collects the counters before settling for the last collect
+    private static final int SNAPSHOT_ATTEMPTS = 8;
+
+    private static class StatisticalFolderHolder {
+        private static final StatisticalFolder instance = new StatisticalFolder();
+    }
+
+    private final LongAdder systemRuntime = new LongAdder();
+    private final LongAdder numDetectedObjects = new LongAdder();
+    private final LongAdder numTrackedObjects = new LongAdder();
+    private final LongAdder numLandmarks = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final List<Supplier<Map<String, Long>>> sources = new CopyOnWriteArrayList<>();
+
+    private StatisticalFolder() {
+    }
+
+    /**
+     * @return the singleton instance of StatisticalFolder
+     */
+    public static StatisticalFolder getInstance() {
+        return StatisticalFolderHolder.instance;
+    }
+
+    public void incrementSystemRuntime() {
+        systemRuntime.increment();
+    }
+
+    public void addDetectedObjects(int count) {
+        numDetectedObjects.add(count);
+    }
+
+    public void addTrackedObjects(int count) {
+        numTrackedObjects.add(count);
+    }
+
+    public void addLandmarks(int count) {
+        numLandmarks.add(count);
+    }
+
+    public long getSystemRuntime() {
+        return systemRuntime.sum();
+    }
+
+    public long getNumDetectedObjects() {
+        return numDetectedObjects.sum();
+    }
+
+    public long getNumTrackedObjects() {
+        return numTrackedObjects.sum();
+    }
+
+    public long getNumLandmarks() {
+        return numLandmarks.sum();
+    }
+
+    /**
+     * Returns the named counter, creating it the first time. Callers on a hot path
+     * should keep the returned adder rather than look it up every time.
+     *
+     * @param name the name the counter is reported under
+     * @return the counter
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Adds values computed when a snapshot is taken, for statistics that are kept elsewhere.
+     *
+     * @param source returns the current values by name
+     */
+    public void addSource(Supplier<Map<String, Long>> source) {
+        sources.add(source);
+    }
+
+    /**
+     * Adds the statistics of the message bus: messages sent per message type, and per
+     * service the messages it took, the messages waiting in its mailbox, the most that
+     * ever waited, the messages that found it full and those of them its policy threw
+     * away. Services are keyed as in
+     * {@link MessageBusControl#getMailboxes()}.
+     */
+    public void addMessageBusSource(MessageBusControl bus) {
+        addSource(() -> {
+            Map<String, Long> values = new TreeMap<>();
+            bus.getSentCounts().forEach((type, count) -> values.put(SENT_PREFIX + type.getSimpleName(), count));
+            for (Map.Entry<String, Mailbox> entry : bus.getMailboxes().entrySet()) {
+                Mailbox mailbox = entry.getValue();
+                String prefix = SERVICE_PREFIX + entry.getKey();
+                values.put(prefix + ".handled", mailbox.getTakenCount());
+                values.put(prefix + ".mailboxDepth", (long) mailbox.size());
+                values.put(prefix + ".mailboxPeak", (long) mailbox.getPeakSize());
+                values.put(prefix + ".overflow", mailbox.getOverflowCount());
+                values.put(prefix + ".dropped", mailbox.getDroppedCount());
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Takes a snapshot of the counters. The counters only grow, so when two collects in
+     * a row read the same values, those values were all current at one instant between
+     * them; under constant updates the last collect is used. Values from sources are
+     * read once, after the counters.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        Snapshot previous = collect();
+        for (int attempt = 1; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            Snapshot current = collect();
+            if (current.sameCounts(previous)) {
+                break;
+            }
+            previous = current;
+        }
+        for (Supplier<Map<String, Long>> source : sources) {
+            previous.counters.putAll(source.get());
+        }
+        return previous;
+    }
+
+    /**
+     * Adds the counters of a checkpoint to the current ones, which are expected to be zero.
+     * Values from sources are not restored, they are computed elsewhere.
+     */
+    void restore(long systemRuntime, long numDetectedObjects, long numTrackedObjects, long numLandmarks,
+                 Map<String, Long> named) {
+        this.systemRuntime.add(systemRuntime);
+        this.numDetectedObjects.add(numDetectedObjects);
+        this.numTrackedObjects.add(numTrackedObjects);
+        this.numLandmarks.add(numLandmarks);
+        named.forEach((name, value) -> counter(name).add(value));
+    }
+
+    /**
+     * @return the named counters, without the values of sources
+     */
+    Map<String, Long> getNamedCounters() {
+        return collect().counters;
+    }
+
+    private Snapshot collect() {
+        Map<String, Long> named = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            named.put(entry.getKey(), entry.getValue().sum());
+        }
+        return new Snapshot(systemRuntime.sum(), numDetectedObjects.sum(), numTrackedObjects.sum(),
+                numLandmarks.sum(), named);
+    }
+
+    /**
+     * The values of the statistics at one point in time.
+     */
+    public static final class Snapshot {
+        private final long systemRuntime;
+        private final long numDetectedObjects;
+        private final long numTrackedObjects;
+        private final long numLandmarks;
+        private final Map<String, Long> counters; // Sorted by name
+
+        private Snapshot(long systemRuntime, long numDetectedObjects, long numTrackedObjects, long numLandmarks,
+                         Map<String, Long> counters) {
+            this.systemRuntime = systemRuntime;
+            this.numDetectedObjects = numDetectedObjects;
+            this.numTrackedObjects = numTrackedObjects;
+            this.numLandmarks = numLandmarks;
+            this.counters = counters;
+        }
+
+        public long getSystemRuntime() {
+            return systemRuntime;
+        }
+
+        public long getNumDetectedObjects() {
+            return numDetectedObjects;
+        }
+
+        public long getNumTrackedObjects() {
+            return numTrackedObjects;
+        }
+
+        public long getNumLandmarks() {
+            return numLandmarks;
+        }
+
+        /**
+         * @return the named counters and source values, sorted by name
+         */
+        public Map<String, Long> getCounters() {
+            return Collections.unmodifiableMap(counters);
+        }
+
+        private boolean sameCounts(Snapshot other) {
+            return systemRuntime == other.systemRuntime && numDetectedObjects == other.numDetectedObjects
+                    && numTrackedObjects == other.numTrackedObjects && numLandmarks == other.numLandmarks
+                    && counters.equals(other.counters);
+        }
+    }
 }
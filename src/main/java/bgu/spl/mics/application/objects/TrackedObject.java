@@ -1,10 +1,98 @@
 package bgu.spl.mics.application.objects;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Represents an object tracked by the LiDAR.
  * This object includes information about the tracked object's ID, description, 
  * time of tracking, and coordinates in the environment.
+ * <p>
+ * The coordinates are in the robot's frame at the time of tracking and are kept as two
+ * primitive arrays, so they can be transformed without going through CloudPoint objects.
  */
 public class TrackedObject {
-    // TODO: Define fields and methods.
+    private final String id;
+    private final int time;
+    private final String description;
+    private final double[] x;
+    private final double[] y;
+
+    /**
+     * @param id          the id of the object
+     * @param time        the time the object was detected
+     * @param description the description given by the camera
+     * @param x           the x coordinates of its points, owned by this object from now on
+     * @param y           the y coordinates of its points, of the same length as {@code x}
+     */
+    public TrackedObject(String id, int time, String description, double[] x, double[] y) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("Got " + x.length + " x coordinates and " + y.length + " y coordinates");
+        }
+        this.id = id;
+        this.time = time;
+        this.description = description;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Creates a tracked object from a detection and the cloud points recorded for it.
+     */
+    public static TrackedObject of(DetectedObject detectedObject, StampedCloudPoints cloudPoints) {
+        double[] x = new double[cloudPoints.size()];
+        double[] y = new double[cloudPoints.size()];
+        cloudPoints.copyXY(x, y);
+        return new TrackedObject(detectedObject.getId(), cloudPoints.getTime(), detectedObject.getDescription(), x, y);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getTime() {
+        return time;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int size() {
+        return x.length;
+    }
+
+    public double getX(int point) {
+        return x[point];
+    }
+
+    public double getY(int point) {
+        return y[point];
+    }
+
+    // The coordinate arrays themselves, for PoseTransform
+    double[] x() {
+        return x;
+    }
+
+    double[] y() {
+        return y;
+    }
+
+    /**
+     * @return the coordinates as new CloudPoint objects
+     */
+    public List<CloudPoint> getCoordinates() {
+        List<CloudPoint> coordinates = new ArrayList<>(x.length);
+        for (int i = 0; i < x.length; i++) {
+            coordinates.add(new CloudPoint(x[i], y[i]));
+        }
+        return coordinates;
+    }
+
+    @Override
+    public String toString() {
+        return "TrackedObject: {ID: " + id + ", Time: " + time + ", Description: " + description
+                + ", Points: " + x.length + "}";
+    }
 }
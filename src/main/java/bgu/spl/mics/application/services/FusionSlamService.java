@@ -1,60 +1,113 @@
-package bgu.spl.mics.application.services;
-
-import bgu.spl.mics.MicroService;
-import bgu.spl.mics.application.objects.FusionSlam;
-
-/**
- * FusionSlamService integrates data from multiple sensors to build and update
- * the robot's global map.
- * 
- * This service receives TrackedObjectsEvents from LiDAR workers and PoseEvents from the PoseService,
- * transforming and updating the map with new landmarks.
- */
-public class FusionSlamService extends MicroService {
-    /**
-     * Constructor for FusionSlamService.
-     *
-     * @param fusionSlam The FusionSLAM object responsible for managing the global map.
-     */
-    private final FusionSlam fusionSlam;
-    public FusionSlamService(FusionSlam fusionSlam) {
-        super("FusionSlamService");
-        this.fusionSlam = fusionSlam;
-    }
-
-    /**
-     * Initializes the FusionSlamService.
-     * Registers the service to handle TrackedObjectsEvents, PoseEvents, and TickBroadcasts,
-     * and sets up callbacks for updating the global map.
-     */
-    @Override
-    protected void initialize() {
-// Subscribe to TrackedObjectsEvents
-        subscribeEvent(TrackedObjectsEvent.class, (TrackedObjectsEvent event) -> {
-            System.out.println("FusionSlamService received TrackedObjectsEvent: " + event.getTrackedObjects());
-
-            // Update the map with new tracked objects
-            fusionSlam.updateWithTrackedObjects(event.getTrackedObjects());
-        });
-
-        // Subscribe to PoseEvents
-        subscribeEvent(PoseEvent.class, (PoseEvent event) -> {
-            System.out.println("FusionSlamService received PoseEvent: " + event.getPose());
-
-            // Update the map with the new pose
-            fusionSlam.updateWithPose(event.getPose());
-        });
-
-        // Subscribe to TickBroadcasts
-        subscribeBroadcast(TickBroadcast.class, (TickBroadcast tick) -> {
-            System.out.println("FusionSlamService received TickBroadcast: " + tick.getTick());
-
-            // Perform periodic maintenance or processing if necessary
-            fusionSlam.performPeriodicUpdate();
-        });
-
-        // Log initialization completion
-        System.out.println("FusionSlamService initialized and ready to integrate sensor data.");
-    }
-    }
-}
+package bgu.spl.mics.application.services;
+
+import bgu.spl.mics.Log;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.SnapshotWriter;
+import bgu.spl.mics.application.messages.PoseEvent;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.messages.TrackedObjectsEvent;
+import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+
+import java.io.IOException;
+
+/**
+ * FusionSlamService integrates data from multiple sensors to build and update
+ * the robot's global map.
+ * 
+ * This service receives TrackedObjectsEvents from LiDAR workers and PoseEvents from the PoseService,
+ * transforming and updating the map with new landmarks.
+ */
+public class FusionSlamService extends MicroService {
+    /** The named statistic counting tracked objects that arrived after their turn and were fused out of order. */
+    public static final String LATE_OBJECTS_COUNTER = "fusion.lateObjects";
+
+    private final FusionSlam fusionSlam;
+    private SnapshotWriter snapshots; // Null when snapshots are off or failed
+    private final int snapshotInterval;
+
+    /**
+     * Constructor for FusionSlamService.
+     *
+     * @param fusionSlam The FusionSLAM object responsible for managing the global map.
+     */
+    public FusionSlamService(FusionSlam fusionSlam) {
+        this(fusionSlam, null, 0);
+    }
+
+    /**
+     * Constructor for a FusionSlamService that writes incremental snapshots of the map.
+     * Changes must be tracked on {@code fusionSlam}, see {@link FusionSlam#trackChanges()}.
+     *
+     * @param fusionSlam       The FusionSLAM object responsible for managing the global map.
+     * @param snapshots        where to write the snapshots, or null for none
+     * @param snapshotInterval the ticks between snapshots
+     */
+    public FusionSlamService(FusionSlam fusionSlam, SnapshotWriter snapshots, int snapshotInterval) {
+        super("FusionSlamService");
+        this.fusionSlam = fusionSlam;
+        this.snapshots = snapshotInterval > 0 ? snapshots : null;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Initializes the FusionSlamService.
+     * Registers the service to handle TrackedObjectsEvents, PoseEvents, and TickBroadcasts,
+     * and sets up callbacks for updating the global map.
+     */
+    @Override
+    protected void initialize() {
+        // Fuse the tracked objects, or hold them until their pose arrives
+        subscribeEvent(TrackedObjectsEvent.class, event -> {
+            int landmarks = fusionSlam.getLandmarkCount();
+            fusionSlam.addTrackedObjects(event.getTrackedObjects());
+            StatisticalFolder.getInstance().addLandmarks(fusionSlam.getLandmarkCount() - landmarks);
+            complete(event, true);
+        });
+
+        // Record the pose, fusing the objects that were waiting for it
+        subscribeEvent(PoseEvent.class, event -> {
+            int landmarks = fusionSlam.getLandmarkCount();
+            fusionSlam.addPose(event.getPose());
+            StatisticalFolder.getInstance().addLandmarks(fusionSlam.getLandmarkCount() - landmarks);
+            complete(event, true);
+        });
+
+        // Fuse the objects whose turn came, then snapshot the landmarks that changed since the previous snapshot
+        subscribeBroadcast(TickBroadcast.class, tick -> {
+            int landmarks = fusionSlam.getLandmarkCount();
+            fusionSlam.advance(tick.getTick());
+            StatisticalFolder.getInstance().addLandmarks(fusionSlam.getLandmarkCount() - landmarks);
+            if (snapshots != null && tick.getTick() % snapshotInterval == 0) {
+                writeSnapshot(tick.getTick());
+            }
+        });
+
+        // Stop once the TimeService reaches the end of the simulation, fusing what is still waiting
+        subscribeBroadcast(TerminatedBroadcast.class, terminated -> {
+            if (TimeService.NAME.equals(terminated.getSenderName())) {
+                int landmarks = fusionSlam.getLandmarkCount();
+                fusionSlam.flush();
+                StatisticalFolder.getInstance().addLandmarks(fusionSlam.getLandmarkCount() - landmarks);
+                StatisticalFolder.getInstance().counter(LATE_OBJECTS_COUNTER).add(fusionSlam.getLateCount());
+                if (fusionSlam.getLateCount() > 0) {
+                    Log.warn(fusionSlam.getLateCount() + " tracked objects arrived after their turn and were fused out of order");
+                }
+                terminate();
+            }
+        });
+
+        // Log initialization completion
+        Log.info("FusionSlamService initialized and ready to integrate sensor data.");
+    }
+
+    private void writeSnapshot(int tick) {
+        try {
+            snapshots.write(tick, StatisticalFolder.getInstance().snapshot(), fusionSlam.takeChangedLandmarks());
+        } catch (IOException e) {
+            Log.warn("Stopped writing snapshots: " + e.getMessage());
+            snapshots = null;
+        }
+    }
+}
@@ -1,61 +1,84 @@
-package bgu.spl.mics.application.services;
-
-import bgu.spl.mics.MicroService;
-import bgu.spl.mics.application.messages.DetectObjectsEvent;
-import bgu.spl.mics.application.objects.LiDarWorkerTracker;
-
-/**
- * LiDarService is responsible for processing data from the LiDAR sensor and
- * sending TrackedObjectsEvents to the FusionSLAM service.
- * 
- * This service interacts with the LiDarWorkerTracker object to retrieve and process
- * cloud point data and updates the system's StatisticalFolder upon sending its
- * observations.
- */
-public class LiDarService extends MicroService {
-    private final LiDarWorkerTracker liDarWorkerTracker;
-    /**
-     * Constructor for LiDarService.
-     *
-     * @param LiDarWorkerTracker A LiDAR Tracker worker object that this service will use to process data.
-     */
-    public LiDarService(LiDarWorkerTracker LiDarWorkerTracker) {
-        super("LiDarService");
-        this.liDarWorkerTracker = liDarWorkerTracker;
-    }
-
-    /**
-     * Initializes the LiDarService.
-     * Registers the service to handle DetectObjectsEvents and TickBroadcasts,
-     * and sets up the necessary callbacks for processing data.
-     */
-    @Override
-    protected void initialize() {
-        // Subscribe to DetectObjectsEvents
-        subscribeEvent(DetectObjectsEvent.class, (DetectObjectsEvent event) -> {
-            System.out.println("LiDarService received DetectObjectsEvent for object: " + event.toString());
-
-            // Process the object using LiDarWorkerTracker
-            String[] trackedObjects = liDarWorkerTracker.processObject(event.getObjectDetails());
-
-            // Use a normal for loop to process tracked objects
-            for (int i = 0; i < trackedObjects.length; i++) {
-                String trackedObject = trackedObjects[i];
-                TrackedObjectsEvent trackedEvent = new TrackedObjectsEvent(trackedObject);
-                sendEvent(trackedEvent);
-            }
-        });
-
-        // Subscribe to TickBroadcasts
-        subscribeBroadcast(TickBroadcast.class, (TickBroadcast tick) -> {
-            System.out.println("LiDarService received TickBroadcast: " + tick.getTick());
-
-            // Perform periodic maintenance or processing if necessary
-            liDarWorkerTracker.performPeriodicUpdate();
-        });
-
-        // Log initialization completion
-        System.out.println("LiDarService initialized and ready to process LiDAR data.");
-    }
-    }
-}
+package bgu.spl.mics.application.services;
+
+import bgu.spl.mics.Log;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.messages.DetectObjectsEvent;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.messages.TrackedObjectsEvent;
+import bgu.spl.mics.application.objects.LiDarWorkerTracker;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.objects.TrackedObject;
+
+import java.util.List;
+
+/**
+ * LiDarService is responsible for processing data from the LiDAR sensor and
+ * sending TrackedObjectsEvents to the FusionSLAM service.
+ * 
+ * This service interacts with the LiDarWorkerTracker object to retrieve and process
+ * cloud point data and updates the system's StatisticalFolder upon sending its
+ * observations.
+ */
+public class LiDarService extends MicroService {
+    private final LiDarWorkerTracker liDarWorkerTracker;
+    private int currentTick;
+
+    /**
+     * Constructor for LiDarService.
+     *
+     * @param liDarWorkerTracker A LiDAR Tracker worker object that this service will use to process data.
+     */
+    public LiDarService(LiDarWorkerTracker liDarWorkerTracker) {
+        this(liDarWorkerTracker, 0);
+    }
+
+    /**
+     * @param liDarWorkerTracker A LiDAR Tracker worker object that this service will use to process data.
+     * @param lastTick           The last tick before this service starts, when resuming from a checkpoint.
+     */
+    public LiDarService(LiDarWorkerTracker liDarWorkerTracker, int lastTick) {
+        super("LiDarService_" + liDarWorkerTracker.getId());
+        this.liDarWorkerTracker = liDarWorkerTracker;
+        this.currentTick = lastTick;
+    }
+
+    /**
+     * Initializes the LiDarService.
+     * Registers the service to handle DetectObjectsEvents and TickBroadcasts,
+     * and sets up the necessary callbacks for processing data.
+     */
+    @Override
+    protected void initialize() {
+        // Track every object of the event at once and send whatever is already due
+        subscribeEvent(DetectObjectsEvent.class, event -> {
+            Log.debug(() -> getName() + " received DetectObjectsEvent: " + event);
+            send(liDarWorkerTracker.track(event.getStampedDetectedObjects(), currentTick));
+            complete(event, true);
+        });
+
+        // Release the tracked objects that became due
+        subscribeBroadcast(TickBroadcast.class, tick -> {
+            currentTick = tick.getTick();
+            send(liDarWorkerTracker.release(currentTick));
+        });
+
+        // Stop once the TimeService reaches the end of the simulation
+        subscribeBroadcast(TerminatedBroadcast.class, terminated -> {
+            if (TimeService.NAME.equals(terminated.getSenderName())) {
+                terminate();
+            }
+        });
+
+        // Log initialization completion
+        Log.info(getName() + " initialized for LiDAR ID: " + liDarWorkerTracker.getId());
+    }
+
+    // One event for all the objects released together
+    private void send(List<TrackedObject> trackedObjects) {
+        if (!trackedObjects.isEmpty()) {
+            sendEvent(new TrackedObjectsEvent(trackedObjects));
+            StatisticalFolder.getInstance().addTrackedObjects(trackedObjects.size());
+        }
+    }
+}
@@ -1,43 +1,56 @@
-package bgu.spl.mics.application.services;
-
-import bgu.spl.mics.MicroService;
-import bgu.spl.mics.application.objects.GPSIMU;
-
-/**
- * PoseService is responsible for maintaining the robot's current pose (position and orientation)
- * and broadcasting PoseEvents at every tick.
- */
-public class PoseService extends MicroService {
-    private final GPSIMU gpsimu;
-    /**
-     * Constructor for PoseService.
-     *
-     * @param gpsimu The GPSIMU object that provides the robot's pose data.
-     */
-    public PoseService(GPSIMU gpsimu) {
-        super("PoseService");
-        this.gpsimu = gpsimu;
-    }
-
-    /**
-     * Initializes the PoseService.
-     * Subscribes to TickBroadcast and sends PoseEvents at every tick based on the current pose.
-     */
-    @Override
-    protected void initialize() {
-        // Subscribe to TickBroadcasts
-        subscribeBroadcast(TickBroadcast.class, (TickBroadcast tick) -> {
-            System.out.println("PoseService received TickBroadcast: " + tick.getTick());
-
-            // Retrieve the current pose from GPSIMU
-            String currentPose = gpsimu.getPose();
-
-            // Send a PoseEvent with the current pose
-            PoseEvent poseEvent = new PoseEvent(currentPose);
-            sendEvent(poseEvent);
-        });
-
-        // Log initialization completion
-        System.out.println("PoseService initialized and ready to broadcast poses.");
-    }
-}
+package bgu.spl.mics.application.services;
+
+import bgu.spl.mics.Log;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.messages.PoseEvent;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.objects.GPSIMU;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.STATUS;
+
+/**
+ * PoseService is responsible for maintaining the robot's current pose (position and orientation)
+ * and broadcasting PoseEvents at every tick.
+ */
+public class PoseService extends MicroService {
+    private final GPSIMU gpsimu;
+    /**
+     * Constructor for PoseService.
+     *
+     * @param gpsimu The GPSIMU object that provides the robot's pose data.
+     */
+    public PoseService(GPSIMU gpsimu) {
+        super("PoseService");
+        this.gpsimu = gpsimu;
+    }
+
+    /**
+     * Initializes the PoseService.
+     * Subscribes to TickBroadcast and sends PoseEvents at every tick based on the current pose.
+     */
+    @Override
+    protected void initialize() {
+        // Send the pose recorded at each tick, if there is one
+        subscribeBroadcast(TickBroadcast.class, tick -> {
+            gpsimu.setCurrentTick(tick.getTick());
+            Pose pose = gpsimu.getPose(tick.getTick());
+            if (pose != null) {
+                sendEvent(new PoseEvent(pose));
+            }
+            if (tick.getTick() >= gpsimu.getLastTime()) {
+                gpsimu.setStatus(STATUS.DOWN);
+            }
+        });
+
+        // Stop once the TimeService reaches the end of the simulation
+        subscribeBroadcast(TerminatedBroadcast.class, terminated -> {
+            if (TimeService.NAME.equals(terminated.getSenderName())) {
+                terminate();
+            }
+        });
+
+        // Log initialization completion
+        Log.info("PoseService initialized and ready to broadcast poses.");
+    }
+}
@@ -1,12 +1,35 @@
 package bgu.spl.mics.application.services;
 
+import bgu.spl.mics.Log;
+import bgu.spl.mics.MessageBusControl;
 import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+
+import java.util.function.IntConsumer;
 
 /**
  * TimeService acts as the global timer for the system, broadcasting TickBroadcast messages
  * at regular intervals and controlling the simulation's duration.
+ * <p>
+ * In fast-forward mode it does not sleep between ticks. It sends the next tick as soon as
+ * every message caused by the previous one has been handled, which requires idle tracking
+ * to be enabled on the message bus before the services start.
+ * <p>
+ * It can also take a checkpoint every few ticks: once every message caused by the tick
+ * has been handled, the checkpoint callback runs on the clock thread before the next
+ * tick is sent. This too requires idle tracking.
  */
 public class TimeService extends MicroService {
+    public static final String NAME = "TimeService";
+
+    private final int tickTime;
+    private final int duration;
+    private final boolean fastForward;
+    private final int firstTick;
+    private final int checkpointInterval;
+    private final IntConsumer checkpoint; // Null for no checkpoints
 
     /**
      * Constructor for TimeService.
@@ -14,13 +37,36 @@ public class TimeService extends MicroService {
      * @param TickTime  The duration of each tick in milliseconds.
      * @param Duration  The total number of ticks before the service terminates.
      */
-    private final int tickTime;
-    private final int duration;
-
     public TimeService(int TickTime, int Duration) {
-        super("TimeService");
+        this(TickTime, Duration, false);
+    }
+
+    /**
+     * @param tickTime    The duration of each tick in milliseconds, ignored in fast-forward mode.
+     * @param duration    The total number of ticks before the service terminates.
+     * @param fastForward Whether to send each tick as soon as the system is idle instead of sleeping.
+     */
+    public TimeService(int tickTime, int duration, boolean fastForward) {
+        this(tickTime, duration, fastForward, 1, 0, null);
+    }
+
+    /**
+     * @param tickTime           The duration of each tick in milliseconds, ignored in fast-forward mode.
+     * @param duration           The last tick to send.
+     * @param fastForward        Whether to send each tick as soon as the system is idle instead of sleeping.
+     * @param firstTick          The first tick to send, after 1 when resuming from a checkpoint.
+     * @param checkpointInterval The ticks between checkpoints.
+     * @param checkpoint         Called with the tick once the system is idle after it, or null for no checkpoints.
+     */
+    public TimeService(int tickTime, int duration, boolean fastForward, int firstTick, int checkpointInterval,
+                       IntConsumer checkpoint) {
+        super(NAME);
         this.tickTime = tickTime;
         this.duration = duration;
+        this.fastForward = fastForward;
+        this.firstTick = firstTick;
+        this.checkpointInterval = checkpointInterval;
+        this.checkpoint = checkpointInterval > 0 ? checkpoint : null;
     }
 
     /**
@@ -29,26 +75,43 @@ public class TimeService extends MicroService {
      */
     @Override
     protected void initialize() {
-        new Thread(() -> {
-            for (int currentTick = 1; currentTick <= duration; currentTick++) {
-                try {
+        // The clock runs on its own thread, the service terminates once the clock announces the end
+        subscribeBroadcast(TerminatedBroadcast.class, terminated -> {
+            if (getName().equals(terminated.getSenderName())) {
+                terminate();
+            }
+        });
+
+        Thread clock = new Thread(() -> {
+            try {
+                for (int currentTick = firstTick; currentTick <= duration; currentTick++) {
                     // Broadcast the TickBroadcast
                     sendBroadcast(new TickBroadcast(currentTick));
+                    StatisticalFolder.getInstance().incrementSystemRuntime();
+
+                    if (fastForward) {
+                        // Wait for the services to finish everything this tick caused
+                        MessageBusControl.getInstance().awaitIdle();
+                    } else {
+                        // Sleep for the duration of a tick
+                        Thread.sleep(tickTime);
+                    }
 
-                    // Sleep for the duration of a tick
-                    Thread.sleep(tickTime);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+                    if (checkpoint != null && currentTick % checkpointInterval == 0 && currentTick < duration) {
+                        if (!fastForward) {
+                            MessageBusControl.getInstance().awaitIdle(); // Nothing may change while the state is copied
+                        }
+                        checkpoint.accept(currentTick);
+                    }
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-
-            // Terminate the service after the specified duration
-            terminate();
-        }).start();
+            sendBroadcast(new TerminatedBroadcast(getName()));
+        }, getName() + "-clock");
+        clock.start();
 
         // Log initialization completion
-        System.out.println("TimeService initialized and ticking.");
-    }
+        Log.info("TimeService initialized and ticking" + (fastForward ? " in fast-forward mode." : "."));
     }
 }
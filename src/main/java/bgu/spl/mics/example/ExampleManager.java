@@ -1,5 +1,7 @@
 package bgu.spl.mics.example;
 
+import bgu.spl.mics.ExecutionMode;
+import bgu.spl.mics.MicroServiceExecutor;
 import bgu.spl.mics.example.services.ExampleBroadcastListenerService;
 import bgu.spl.mics.example.services.ExampleMessageSenderService;
 import bgu.spl.mics.example.services.ExampleEventHandlerService;
@@ -16,6 +18,10 @@ public class ExampleManager {
         serviceCreators.put("brod-listener", ExampleBroadcastListenerService::new);
         serviceCreators.put("sender", ExampleMessageSenderService::new);
 
+        // The execution mode may be given as the first argument, e.g. WORK_STEALING_POOL
+        ExecutionMode mode = args.length > 0 ? ExecutionMode.valueOf(args[0]) : ExecutionMode.PLATFORM_THREADS;
+        MicroServiceExecutor executor = MicroServiceExecutor.create(mode, 0, MicroServiceExecutor.DEFAULT_BATCH_SIZE);
+
         Scanner sc = new Scanner(System.in);
         boolean quit = false;
         try {
@@ -39,7 +45,7 @@ public class ExampleManager {
                                     throw new IllegalArgumentException("unknown service type, supported types: " + serviceCreators.keySet());
                                 }
 
-                                new Thread(creator.create(params[2], Arrays.copyOfRange(params, 3, params.length))).start();
+                                executor.start(creator.create(params[2], Arrays.copyOfRange(params, 3, params.length)));
                             } catch (IllegalArgumentException ex) {
                                 System.out.println("Error: " + ex.getMessage());
                             }
@@ -57,6 +63,7 @@ public class ExampleManager {
         } finally {
             System.out.println("Manager Terminating - UNGRACEFULLY!");
             sc.close();
+            executor.shutdown();
             System.exit(0);
         }
     }
@@ -0,0 +1,16 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the virtual threads used by {@link ExecutionMode#VIRTUAL_THREADS}.
+ * Compiled only by the java21 profile, {@link MicroServiceExecutor} loads it by name.
+ */
+final class VirtualThreadFactory implements ThreadFactory {
+    private final ThreadFactory factory = Thread.ofVirtual().factory();
+
+    @Override
+    public Thread newThread(Runnable r) {
+        return factory.newThread(r);
+    }
+}
@@ -0,0 +1,34 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FutureTest {
+    // A failing callback is logged; the others still run and the resolving thread carries on
+    @Test
+    void aFailingCallbackDoesNotStopTheOthers() {
+        Future<String> future = new Future<>();
+        List<String> called = new ArrayList<>();
+        future.onComplete(result -> called.add("first " + result));
+        future.onComplete(result -> {
+            throw new IllegalStateException("Callback failure expected by the test");
+        });
+        future.onComplete(result -> called.add("third " + result));
+
+        future.resolve("done");
+        assertEquals(Arrays.asList("first done", "third done"), called);
+        assertTrue(future.isDone());
+
+        future.onComplete(result -> {
+            throw new IllegalStateException("Callback failure expected by the test");
+        });
+        future.onComplete(result -> called.add("late " + result));
+        assertEquals(Arrays.asList("first done", "third done", "late done"), called);
+    }
+}
@@ -0,0 +1,368 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The bus is a singleton shared by every test in the JVM, so each test sends message
+ * types of its own and unregisters its services before it returns.
+ */
+class MessageBusImplTest {
+    private static final long JOIN_TIMEOUT_MS = 10_000;
+    // Soak tests send this many events after warming up; kept, each would hold well over 100 bytes
+    private static final int SOAK_EVENTS = 500_000;
+    private static final long SOAK_HEAP_GROWTH_LIMIT = 16 << 20;
+
+    private final MessageBusImpl bus = MessageBusImpl.getInstance();
+
+    // A service blocked in awaitMessage must wake up as soon as an event arrives
+    @Test
+    void awaitMessageWakesUpWithinAMillisecond() throws InterruptedException {
+        int warmUp = 2_000;
+        int samples = 10_000;
+        Echo echo = start(new Echo());
+        long[] latencies = new long[samples];
+        for (int i = 0; i < warmUp + samples; i++) {
+            // The service is idle and blocked in awaitMessage each time the ping is sent
+            Future<Long> future = bus.sendEvent(new Ping(System.nanoTime()));
+            assertNotNull(future);
+            Long latency = future.get(JOIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull(latency);
+            if (i >= warmUp) {
+                latencies[i - warmUp] = latency;
+            }
+        }
+        stop(echo);
+
+        Arrays.sort(latencies);
+        long p99 = latencies[samples * 99 / 100];
+        assertTrue(p99 < TimeUnit.MILLISECONDS.toNanos(1), "p99 " + p99 / 1000 + " us from sendEvent to dispatch");
+    }
+
+    @Test
+    void unregisterWakesUpABlockedService() throws InterruptedException {
+        Echo echo = start(new Echo());
+        Thread.sleep(50); // Lets it block in awaitMessage
+        stop(echo);
+        assertFalse(echo.thread.isAlive());
+        assertEquals(0, echo.handled);
+    }
+
+    // With a fixed set of subscribers, concurrent senders share the events out exactly evenly
+    @Test
+    void roundRobinSharesEventsEvenly() throws InterruptedException {
+        int perService = 1_000;
+        List<Idle> services = register(4, "Fair");
+        send(4, services.size() * perService, () -> assertNotNull(bus.sendEvent(new Work())));
+        bus.sendBroadcast(new End());
+        for (Idle service : services) {
+            assertEquals(perService, drain(service).work);
+        }
+        unregister(services);
+    }
+
+    // Services that come and go must neither lose nor duplicate what is sent to the others
+    @Test
+    void routesCorrectlyWhileServicesSubscribeAndUnregister() throws InterruptedException {
+        int sent = 20_000;
+        List<Idle> stable = register(2, "Stable");
+        AtomicBoolean sending = new AtomicBoolean(true);
+        Thread churn = new Thread(() -> {
+            while (sending.get()) {
+                unregister(register(2, "Passing"));
+            }
+        }, "Churn");
+        churn.start();
+        List<Future<Boolean>> futures = new ArrayList<>();
+        send(4, sent, () -> {
+            Future<Boolean> future = bus.sendEvent(new Work());
+            assertNotNull(future); // The stable services are always subscribed
+            synchronized (futures) {
+                futures.add(future);
+            }
+            bus.sendBroadcast(new Notice());
+        });
+        sending.set(false);
+        churn.join(JOIN_TIMEOUT_MS);
+
+        bus.sendBroadcast(new End());
+        int held = 0;
+        for (Idle service : stable) {
+            Drained drained = drain(service);
+            assertEquals(sent, drained.notices);
+            held += drained.work;
+        }
+        int discarded = 0; // Held by a passing service when it unregistered
+        for (Future<Boolean> future : futures) {
+            if (future.isDone()) {
+                assertNull(future.get());
+                discarded++;
+            }
+        }
+        assertEquals(sent, held + discarded);
+        unregister(stable);
+    }
+
+    // A refused event must not look like a discarded one
+    @Test
+    void failFutureFailsTheEventsItRefuses() throws InterruptedException {
+        MessageBusControl.getInstance().configureMailbox("Refusing", 1, MailboxPolicy.FAIL_FUTURE);
+        List<Idle> service = register(1, "Refusing");
+        Future<Boolean> held = bus.sendEvent(new Work());
+        Future<Boolean> refused = bus.sendEvent(new Work());
+        assertFalse(held.isDone());
+        assertTrue(refused.isDone());
+        assertNull(refused.get());
+        assertTrue(refused.getFailure() instanceof IllegalStateException);
+        CompletableFuture<Boolean> completable = refused.toCompletableFuture();
+        assertTrue(completable.isCompletedExceptionally());
+        ExecutionException thrown = assertThrows(ExecutionException.class, completable::get);
+        assertSame(refused.getFailure(), thrown.getCause());
+
+        unregister(service);
+        assertTrue(held.isDone());
+        assertNull(held.getFailure()); // Discarded, not refused
+    }
+
+    // Only messages the policy throws away count as dropped, not senders that waited for room
+    @Test
+    void countsOnlyDiscardedMessagesAsDropped() throws InterruptedException {
+        MessageBusControl control = MessageBusControl.getInstance();
+        control.configureMailbox("DroppingOldest", 2, MailboxPolicy.DROP_OLDEST);
+        control.configureMailbox("Blocking", 1, MailboxPolicy.BLOCK);
+        List<Idle> dropping = register(1, "DroppingOldest");
+        for (int i = 0; i < 5; i++) {
+            bus.sendEvent(new Work());
+        }
+        Mailbox mailbox = control.getMailboxes().get("DroppingOldest");
+        assertEquals(3, mailbox.getOverflowCount());
+        assertEquals(3, mailbox.getDroppedCount());
+        unregister(dropping);
+
+        List<Idle> blocking = register(1, "Blocking");
+        Mailbox full = control.getMailboxes().get("Blocking");
+        Thread sender = new Thread(() -> {
+            bus.sendBroadcast(new Notice());
+            bus.sendBroadcast(new Notice()); // Waits for room
+        }, "Sender");
+        sender.start();
+        while (full.getOverflowCount() == 0 && sender.isAlive()) {
+            Thread.sleep(1);
+        }
+        bus.awaitMessage(blocking.get(0));
+        sender.join(JOIN_TIMEOUT_MS);
+        assertFalse(sender.isAlive());
+        assertEquals(2, full.getTakenCount() + full.size());
+        unregister(blocking);
+        assertEquals(1, full.getOverflowCount());
+        assertEquals(0, full.getDroppedCount());
+    }
+
+    // The bus must keep nothing of an event once it is completed
+    @Test
+    void completedEventsDoNotGrowTheHeap() throws InterruptedException {
+        Echo echo = start(new Echo());
+        roundTrips(SOAK_EVENTS / 5);
+        long before = usedHeap();
+        roundTrips(SOAK_EVENTS);
+        long growth = usedHeap() - before;
+        stop(echo);
+        assertTrue(growth < SOAK_HEAP_GROWTH_LIMIT, "The heap grew by " + (growth >> 10) + " KB");
+    }
+
+    // Nor once its service unregistered without handling it
+    @Test
+    void discardedEventsDoNotGrowTheHeap() throws InterruptedException {
+        int perService = 1_000;
+        discardedRounds(SOAK_EVENTS / 5 / perService, perService);
+        long before = usedHeap();
+        discardedRounds(SOAK_EVENTS / perService, perService);
+        long growth = usedHeap() - before;
+        assertTrue(growth < SOAK_HEAP_GROWTH_LIMIT, "The heap grew by " + (growth >> 10) + " KB");
+    }
+
+    // Sends events to Echo in batches and waits for each batch to complete
+    private void roundTrips(int count) {
+        List<Future<Long>> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            batch.add(bus.sendEvent(new Ping(System.nanoTime())));
+            if (batch.size() == 1_000 || i == count - 1) {
+                for (Future<Long> future : batch) {
+                    assertNotNull(future.get(JOIN_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    // Fills the mailbox of a service that never runs, then unregisters it
+    private void discardedRounds(int rounds, int perService) {
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            List<Idle> service = register(1, "Discarding");
+            for (int i = 0; i < perService; i++) {
+                futures.add(bus.sendEvent(new Work()));
+            }
+            unregister(service);
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.isDone());
+                assertNull(future.get());
+            }
+            futures.clear();
+        }
+    }
+
+    // The heap in use after a full collection
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Runs count sends split over threads started together
+    private static void send(int threads, int count, Runnable send) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> senders = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int share = count / threads + (t < count % threads ? 1 : 0);
+            Thread sender = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < share; i++) {
+                        send.run();
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }, "Sender-" + t);
+            sender.start();
+            senders.add(sender);
+        }
+        start.countDown();
+        for (Thread sender : senders) {
+            sender.join(JOIN_TIMEOUT_MS);
+        }
+        assertEquals(new ArrayList<Throwable>(), failures);
+    }
+
+    // Registers services that take work and notices, without running them
+    private List<Idle> register(int count, String name) {
+        List<Idle> services = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Idle service = new Idle(name);
+            bus.register(service);
+            bus.subscribeEvent(Work.class, service);
+            bus.subscribeBroadcast(Notice.class, service);
+            bus.subscribeBroadcast(End.class, service);
+            services.add(service);
+        }
+        return services;
+    }
+
+    private void unregister(List<Idle> services) {
+        for (Idle service : services) {
+            bus.unregister(service);
+        }
+    }
+
+    // Takes the messages waiting for the service, up to an End broadcast sent after them
+    private Drained drain(Idle service) throws InterruptedException {
+        Drained drained = new Drained();
+        for (Message message; !((message = bus.awaitMessage(service)) instanceof End); ) {
+            if (message instanceof Notice) {
+                drained.notices++;
+            } else {
+                drained.work++;
+            }
+        }
+        return drained;
+    }
+
+    // Runs the service on a thread of its own once it has subscribed
+    private static Echo start(Echo echo) throws InterruptedException {
+        echo.thread = new Thread(echo, "Echo");
+        echo.thread.start();
+        assertTrue(echo.subscribed.await(JOIN_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        return echo;
+    }
+
+    private void stop(Echo echo) throws InterruptedException {
+        bus.unregister(echo);
+        echo.thread.join(JOIN_TIMEOUT_MS);
+    }
+
+    private static final class Work implements Event<Boolean> {
+    }
+
+    private static final class Notice implements Broadcast {
+    }
+
+    private static final class End implements Broadcast {
+    }
+
+    private static final class Drained {
+        private int work;
+        private int notices;
+    }
+
+    // Registered directly with the bus and never run, its messages are taken by drain()
+    private static final class Idle extends MicroService {
+        private Idle(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void initialize() {
+        }
+    }
+
+    private static final class Ping implements Event<Long> {
+        private final long sentAt;
+
+        private Ping(long sentAt) {
+            this.sentAt = sentAt;
+        }
+    }
+
+    // Completes each ping with the time it took to reach the callback
+    private static final class Echo extends MicroService {
+        private final CountDownLatch subscribed = new CountDownLatch(1);
+        private Thread thread;
+        private int handled = 0;
+
+        private Echo() {
+            super("Echo");
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeEvent(Ping.class, ping -> {
+                handled++;
+                complete(ping, System.nanoTime() - ping.sentAt);
+            });
+            subscribed.countDown();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MessageLogTest {
+    private static final MessageLog LOG = new MessageLog()
+            .register(Note.class, new MessageCodec<Note>() {
+                @Override
+                public void write(Note message, DataOutput out) throws IOException {
+                    out.writeUTF(message.text);
+                }
+
+                @Override
+                public Note read(DataInput in) throws IOException {
+                    return new Note(in.readUTF());
+                }
+            });
+
+    @TempDir
+    Path directory;
+
+    // Services are told apart by position, not by name
+    @Test
+    void replaysEachMessageToTheServiceThatTookIt() throws IOException {
+        String file = directory.resolve("messages.log").toString();
+        List<Listener> recorded = Arrays.asList(new Listener("Twin"), new Listener("Twin"));
+        try (MessageRecorder recorder = new MessageRecorder(file, LOG, recorded)) {
+            recorder.record(new Note("a"), null, recorded.get(0));
+            recorder.record(new Note("b"), recorded.get(0), recorded.get(1));
+            recorder.record(new Note("c"), new Listener("Other"), recorded.get(1));
+            recorder.record(new Note("d"), null, new Listener("Twin")); // Not listed
+            assertEquals(4, recorder.getRecordedCount());
+        }
+
+        List<Listener> replayed = Arrays.asList(new Listener("Twin"), new Listener("Twin"));
+        MessageReplayer.Result result = new MessageReplayer(file, LOG).replay(replayed, null);
+        assertEquals(Collections.singletonList("a"), replayed.get(0).received);
+        assertEquals(Arrays.asList("b", "c"), replayed.get(1).received);
+        assertEquals(3, result.getDispatchedCount());
+        assertEquals(1, result.getSkippedCount());
+    }
+
+    // Small chunks make the recorder pad out chunks and the replayer skip the padding
+    @Test
+    void readsBackRecordsAcrossChunks() throws IOException {
+        String file = directory.resolve("messages.log").toString();
+        List<String> texts = new ArrayList<>();
+        List<Listener> recorded = Collections.singletonList(new Listener("Listener"));
+        try (MessageRecorder recorder = new MessageRecorder(file, LOG, recorded, 256)) {
+            for (int i = 0; i < 1000; i++) {
+                String text = "note " + i + String.join("", Collections.nCopies(i % 50, "."));
+                texts.add(text);
+                recorder.record(new Note(text), null, recorded.get(0));
+            }
+            assertEquals(0, recorder.getDroppedCount());
+        }
+
+        List<Listener> replayed = Collections.singletonList(new Listener("Listener"));
+        new MessageReplayer(file, LOG).replay(replayed, null);
+        assertEquals(texts, replayed.get(0).received);
+    }
+
+    @Test
+    void refusesServicesInAnotherOrder() throws IOException {
+        String file = directory.resolve("messages.log").toString();
+        new MessageRecorder(file, LOG, Arrays.asList(new Listener("First"), new Listener("Second"))).close();
+        MessageReplayer replayer = new MessageReplayer(file, LOG);
+        assertThrows(IOException.class,
+                () -> replayer.replay(Arrays.asList(new Listener("Second"), new Listener("First")), null));
+    }
+
+    private static final class Note implements Broadcast {
+        private final String text;
+
+        private Note(String text) {
+            this.text = text;
+        }
+    }
+
+    private static final class Listener extends MicroService {
+        private final List<String> received = new ArrayList<>();
+
+        private Listener(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(Note.class, note -> received.add(note.text));
+        }
+    }
+}
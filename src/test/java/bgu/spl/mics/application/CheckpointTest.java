@@ -0,0 +1,46 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.application.objects.Checkpoint;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static bgu.spl.mics.application.Simulations.copy;
+import static bgu.spl.mics.application.Simulations.fields;
+import static bgu.spl.mics.application.Simulations.run;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CheckpointTest {
+    // The cameras' data ends at tick 13, a run stopped here leaves both cameras and LiDARs half done
+    private static final int STOP = 8;
+    private static final int INTERVAL = 3;
+
+    @TempDir
+    Path directory;
+
+    // Example 2 has two cameras with the same id, each must resume from its own cursor
+    @Test
+    void resumedRunGivesTheUninterruptedOutput() throws Exception {
+        Path input = copy(Simulations.EXAMPLE_INPUT_2, directory);
+        JsonObject uninterrupted = run(input, fields("FastForward", true));
+
+        run(input, fields("FastForward", true, "Duration", STOP, "Checkpoint", fields("interval", INTERVAL)));
+        assertEquals(6, Checkpoint.read(input.resolve("checkpoint.bin").toString()).getTick());
+        JsonObject resumed = run(input, fields("FastForward", true, "Checkpoint", fields("resume", true)));
+        assertEquals(uninterrupted, resumed);
+    }
+
+    @Test
+    void checkpointReadsBackAsWritten() throws Exception {
+        Path input = copy(Simulations.EXAMPLE_INPUT_2, directory);
+        run(input, fields("FastForward", true, "Duration", STOP, "Checkpoint", fields("interval", INTERVAL)));
+        Path written = input.resolve("checkpoint.bin");
+        Path rewritten = input.resolve("rewritten.bin");
+        Checkpoint.read(written.toString()).write(rewritten.toString());
+        assertArrayEquals(Files.readAllBytes(written), Files.readAllBytes(rewritten));
+    }
+}
@@ -0,0 +1,52 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.application.services.FusionSlamService;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static bgu.spl.mics.application.Simulations.copy;
+import static bgu.spl.mics.application.Simulations.counter;
+import static bgu.spl.mics.application.Simulations.fields;
+import static bgu.spl.mics.application.Simulations.run;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FastForwardTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void fastForwardGivesTheRealTimeOutput() throws Exception {
+        assertSameOutput(Simulations.EXAMPLE_INPUT);
+    }
+
+    // The LiDARs send the objects of one detection time at different ticks, in an order that depends on timing
+    @Test
+    void fastForwardGivesTheRealTimeOutputWithSeveralSensors() throws Exception {
+        assertSameOutput(Simulations.EXAMPLE_INPUT_2);
+    }
+
+    @Test
+    void fastForwardGivesTheSameOutputEveryRun() throws Exception {
+        Path input = copy(Simulations.EXAMPLE_INPUT_2, directory);
+        JsonObject first = run(input, fields("FastForward", true));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(first, run(input, fields("FastForward", true)));
+            assertEquals(0, counter(input, FusionSlamService.LATE_OBJECTS_COUNTER));
+        }
+    }
+
+    // Real-time output matches only while the services keep up with the clock within its lag, so a
+    // run in which they fell further behind shows up as skipped rather than passed
+    private void assertSameOutput(String example) throws Exception {
+        Path realTimeInput = copy(example, directory.resolve("real-time"));
+        JsonObject realTime = run(realTimeInput, fields("FastForward", false));
+        assumeTrue(counter(realTimeInput, FusionSlamService.LATE_OBJECTS_COUNTER) == 0,
+                "The real-time run fell behind its clock by more than the fusion lag");
+        JsonObject fastForward = run(copy(example, directory.resolve("fast-forward")), fields("FastForward", true));
+        assertEquals(realTime, fastForward);
+    }
+}
@@ -0,0 +1,26 @@
+package bgu.spl.mics.application;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static bgu.spl.mics.application.Simulations.copy;
+import static bgu.spl.mics.application.Simulations.fields;
+import static bgu.spl.mics.application.Simulations.run;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecordReplayTest {
+    @TempDir
+    Path directory;
+
+    // Example 2 has two cameras with the same id, and so the same service name
+    @Test
+    void replayGivesTheRecordedOutput() throws Exception {
+        Path input = copy(Simulations.EXAMPLE_INPUT_2, directory);
+        JsonObject recorded = run(input, fields("FastForward", true, "Recording", fields("mode", "\"RECORD\"")));
+        JsonObject replayed = run(input, fields("Recording", fields("mode", "\"REPLAY\"")));
+        assertEquals(recorded, replayed);
+    }
+}
@@ -0,0 +1,127 @@
+package bgu.spl.mics.application;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs the simulation on a copy of an example input, each run in a JVM of its own:
+ * the message bus, FusionSlam and StatisticalFolder are singletons that a run leaves
+ * behind.
+ */
+final class Simulations {
+    static final String EXAMPLE_INPUT = "example input";
+    // Two cameras with the same id, and two LiDARs of different frequencies
+    static final String EXAMPLE_INPUT_2 = "example_input_2";
+
+    private static final long TIMEOUT_SECONDS = 120;
+
+    private Simulations() {
+    }
+
+    /**
+     * @return {@code directory}, holding the input files of {@code example}
+     */
+    static Path copy(String example, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(example), "*.json")) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals("output.json")) {
+                    Files.copy(file, directory.resolve(file.getFileName()));
+                }
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Runs the configuration in {@code directory} with some of its fields replaced.
+     *
+     * @return the output.json of the run
+     */
+    static JsonObject run(Path directory, JsonObject changes) throws IOException, InterruptedException {
+        JsonObject configuration = read(directory.resolve("configuration_file.json"));
+        for (Map.Entry<String, JsonElement> change : changes.entrySet()) {
+            configuration.add(change.getKey(), change.getValue());
+        }
+        Path configurationFile = directory.resolve("test_configuration.json");
+        try (Writer out = Files.newBufferedWriter(configurationFile, StandardCharsets.UTF_8)) {
+            out.write(configuration.toString());
+        }
+        Path output = directory.resolve("output.json");
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(directory.resolve("statistics.json"));
+        Path log = directory.resolve("run.log");
+        Process process = new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", classPath(), GurionRockRunner.class.getName(), configurationFile.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            fail("The simulation did not finish, see " + log);
+        }
+        assertEquals(0, process.exitValue(), "See " + log);
+        assertTrue(Files.exists(output), "No output, see " + log);
+        return read(output);
+    }
+
+    /**
+     * @return the named counter {@code name} in the statistics.json of the last run in {@code directory}
+     */
+    static long counter(Path directory, String name) throws IOException {
+        Path statistics = directory.resolve("statistics.json");
+        assertTrue(Files.exists(statistics), "No statistics in " + directory);
+        JsonElement counters = read(statistics).get("counters");
+        assertNotNull(counters, "No counters in " + statistics);
+        JsonElement counter = counters.getAsJsonObject().get(name);
+        assertNotNull(counter, "No counter " + name + " in " + statistics);
+        return counter.getAsLong();
+    }
+
+    static JsonObject fields(Object... namesAndValues) {
+        JsonObject fields = new JsonObject();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            Object value = namesAndValues[i + 1];
+            fields.add((String) namesAndValues[i], value instanceof JsonElement
+                    ? (JsonElement) value : JsonParser.parseString(String.valueOf(value)));
+        }
+        return fields;
+    }
+
+    private static JsonObject read(Path file) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return JsonParser.parseReader(in).getAsJsonObject();
+        }
+    }
+
+    // The classes of the simulation and Gson, wherever the build put them
+    private static String classPath() {
+        try {
+            return Paths.get(GurionRockRunner.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                    + File.pathSeparator
+                    + Paths.get(JsonParser.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointCaptureTest {
+    // The shortest TickTime, which a checkpoint pauses the clock for
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @TempDir
+    Path directory;
+
+    // Captures of the changes, applied in turn, must add up to the whole map
+    @Test
+    void appliedCapturesHoldTheWholeMap() throws IOException {
+        FusionSlam fusionSlam = new FusionSlam(FusionSlam.DEFAULT_CELL_SIZE);
+        GPSIMU gpsimu = gpsimu();
+        Checkpoint.trackChanges(fusionSlam, null);
+        Checkpoint checkpoint = Checkpoint.empty();
+        for (int i = 0; i < 1_000; i++) {
+            observe(fusionSlam, i, i);
+        }
+        checkpoint.update(capture(1, fusionSlam, gpsimu));
+        for (int i = 990; i < 1_010; i++) {
+            observe(fusionSlam, i, -i); // Updates ten and adds ten
+        }
+        checkpoint.update(capture(2, fusionSlam, gpsimu));
+        String file = directory.resolve("checkpoint.bin").toString();
+        checkpoint.write(file);
+
+        FusionSlam restored = new FusionSlam(FusionSlam.DEFAULT_CELL_SIZE);
+        Checkpoint read = Checkpoint.read(file);
+        read.restore(restored, StatisticalFolder.getInstance(), Collections.emptyList(), Collections.emptyList(), null,
+                gpsimu());
+        assertEquals(2, read.getTick());
+        assertEquals(ids(fusionSlam), ids(restored));
+        for (LandMark landmark : fusionSlam.getLandmarks()) {
+            assertEquals(landmark.getX(0), restored.getLandmark(landmark.getId()).getX(0));
+        }
+    }
+
+    // The clock waits for the capture, which must not walk a large map
+    @Test
+    void capturingAFewChangesInALargeMapTakesLessThanATick() throws IOException {
+        FusionSlam fusionSlam = new FusionSlam(FusionSlam.DEFAULT_CELL_SIZE);
+        GPSIMU gpsimu = gpsimu();
+        for (int i = 0; i < 200_000; i++) {
+            observe(fusionSlam, i, i); // As if restored from a checkpoint
+        }
+        Checkpoint.trackChanges(fusionSlam, null);
+        long[] pauses = new long[50];
+        for (int round = 0; round < 200 + pauses.length; round++) {
+            for (int i = 0; i < 100; i++) {
+                observe(fusionSlam, round * 100 + i, round);
+            }
+            long start = System.nanoTime();
+            capture(round, fusionSlam, gpsimu);
+            if (round >= 200) {
+                pauses[round - 200] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(pauses);
+        long median = pauses[pauses.length / 2];
+        assertTrue(median < TICK_NANOS, "Median capture " + median / 1000 + " us");
+    }
+
+    private static Checkpoint capture(int tick, FusionSlam fusionSlam, GPSIMU gpsimu) {
+        return Checkpoint.capture(tick, fusionSlam, StatisticalFolder.getInstance(), Collections.emptyList(),
+                Collections.emptyList(), null, gpsimu);
+    }
+
+    private static void observe(FusionSlam fusionSlam, int landmark, double x) {
+        fusionSlam.updateLandmark("Landmark_" + landmark, "Landmark", new double[]{x}, new double[]{landmark}, 1);
+    }
+
+    private static List<String> ids(FusionSlam fusionSlam) {
+        List<String> ids = new ArrayList<>();
+        for (LandMark landmark : fusionSlam.getLandmarks()) {
+            ids.add(landmark.getId());
+        }
+        return ids;
+    }
+
+    private GPSIMU gpsimu() throws IOException {
+        Path file = directory.resolve("pose_data.json");
+        Files.write(file, "[{\"time\": 1, \"x\": 0, \"y\": 0, \"yaw\": 0}]".getBytes(StandardCharsets.UTF_8));
+        return GPSIMU.load(file.toString());
+    }
+}
@@ -0,0 +1,56 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FusionSlamTest {
+    private static final int DELAY = 2;
+
+    // Averaging makes the map depend on the order; within the delay, arrival order must not matter
+    @Test
+    void fusesObjectsInTimeOrderWhateverOrderTheyArriveIn() {
+        FusionSlam inOrder = ordered();
+        add(inOrder, 1, 2, 3);
+        FusionSlam shuffled = ordered();
+        add(shuffled, 3, 1, 2);
+        for (FusionSlam fusionSlam : new FusionSlam[]{inOrder, shuffled}) {
+            fusionSlam.advance(3 + DELAY + 1);
+        }
+        assertEquals(0, shuffled.getLateCount());
+        assertEquals(inOrder.getLandmark("Wall").getX(0), shuffled.getLandmark("Wall").getX(0));
+    }
+
+    // The delay is a bound the senders are trusted to keep, an object past it is fused anyway and counted
+    @Test
+    void countsObjectsThatArriveAfterTheirTurn() {
+        FusionSlam fusionSlam = ordered();
+        add(fusionSlam, 2, 3);
+        fusionSlam.advance(3 + DELAY + 1);
+        add(fusionSlam, 1);
+        fusionSlam.flush();
+        assertEquals(1, fusionSlam.getLateCount());
+        assertEquals(0, fusionSlam.getPendingCount());
+        assertEquals(1, fusionSlam.getLandmarkCount());
+    }
+
+    private static FusionSlam ordered() {
+        FusionSlam fusionSlam = new FusionSlam(FusionSlam.DEFAULT_CELL_SIZE);
+        fusionSlam.configurePoseHistory(DELAY);
+        fusionSlam.orderByTime(DELAY);
+        for (int time = 1; time <= 3; time++) {
+            fusionSlam.addPose(new Pose(0, 0, 0, time));
+        }
+        return fusionSlam;
+    }
+
+    // One observation of the same wall per time, at x = time
+    private static void add(FusionSlam fusionSlam, int... times) {
+        for (int time : times) {
+            fusionSlam.addTrackedObjects(Collections.singletonList(
+                    new TrackedObject("Wall", time, "Wall", new double[]{time}, new double[]{0})));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiDarBinaryFormatTest {
+    private static final int TIMES = 500;
+    // Includes an id that is not ASCII
+    private static final String[] IDS = {"Wall_1", "Door_1", "Tür_2"};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void convertedFileHoldsEveryRecord() throws IOException {
+        Path json = write();
+        Path binary = directory.resolve("lidar_data.bin");
+        LiDarBinaryFormat.convert(json.toString(), binary.toString());
+        assertTrue(LiDarBinaryFormat.isBinaryFile(binary.toString()));
+        assertFalse(LiDarBinaryFormat.isBinaryFile(json.toString()));
+
+        try (MappedLiDarRecording recording = MappedLiDarRecording.open(binary.toString())) {
+            assertEquals(TIMES * IDS.length, recording.getRecordCount());
+            int record = 0;
+            for (int time = 1; time <= TIMES; time++) {
+                for (int id = 0; id < IDS.length; id++) {
+                    assertRecord(IDS[id], time, recording.get(record)); // File order
+                    assertEquals(record++, recording.indexOf(IDS[id], time));
+                    assertRecord(IDS[id], time, recording.find(IDS[id], time));
+                }
+            }
+            assertNull(recording.find("Wall_1", TIMES + 1));
+            assertNull(recording.find("Window_1", 1));
+        }
+    }
+
+    @Test
+    void dataBaseAnswersFromTheConvertedFile() throws IOException {
+        Path binary = directory.resolve("lidar_data.bin");
+        LiDarBinaryFormat.convert(write().toString(), binary.toString());
+        LiDarDataBase dataBase = LiDarDataBase.open(binary.toString(), CloudPointStorage.Kind.HEAP_DOUBLE, false);
+        assertEquals(TIMES * IDS.length, dataBase.getRecordCount());
+        for (int time = TIMES; time >= 1; time--) {
+            assertRecord(IDS[2], time, dataBase.getCloudPoints(IDS[2], time));
+        }
+        assertEquals(TIMES, dataBase.getConsumedCount());
+    }
+
+    private static void assertRecord(String id, int time, StampedCloudPoints points) {
+        assertNotNull(points, id + " at " + time);
+        assertEquals(id, points.getId());
+        assertEquals(time, points.getTime());
+        assertEquals(pointCount(id, time), points.size());
+        for (int i = 0; i < points.size(); i++) {
+            // Stored as floats
+            assertEquals((float) x(time, i), points.getX(i));
+            assertEquals((float) y(time, i), points.getY(i));
+            assertEquals((float) z(i), points.getZ(i));
+        }
+    }
+
+    // Some records have no points
+    private static int pointCount(String id, int time) {
+        return (time + id.length()) % 7;
+    }
+
+    private static double x(int time, int point) {
+        return time * 0.1 + point;
+    }
+
+    private static double y(int time, int point) {
+        return -time * 0.3 - point;
+    }
+
+    private static double z(int point) {
+        return 0.1 * point;
+    }
+
+    private Path write() throws IOException {
+        Path file = directory.resolve("lidar_data.json");
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write('[');
+            String separator = "";
+            for (int time = 1; time <= TIMES; time++) {
+                for (String id : IDS) {
+                    out.write(separator + "{\"time\": " + time + ", \"id\": \"" + id + "\", \"cloudPoints\": [");
+                    for (int i = 0; i < pointCount(id, time); i++) {
+                        out.write((i == 0 ? "[" : ",[") + x(time, i) + ", " + y(time, i) + ", " + z(i) + "]");
+                    }
+                    out.write("]}");
+                    separator = ",";
+                }
+            }
+            out.write(']');
+        }
+        return file;
+    }
+}
@@ -0,0 +1,60 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class LiDarDataBaseTest {
+    private static final int TIMES = 20_000;
+
+    @TempDir
+    Path directory;
+
+    // Without the promise of time order, a lookup must not be answered before the record going back in time is read
+    @Test
+    void findsRecordsThatGoBackInTime() throws IOException {
+        Path file = write(true);
+        LiDarDataBase dataBase = LiDarDataBase.open(file.toString(), CloudPointStorage.Kind.HEAP_DOUBLE, false);
+        StampedCloudPoints late = dataBase.getCloudPoints("Late", 1);
+        assertNotNull(late);
+        assertEquals(7.0, late.getX(0));
+        assertEquals(TIMES + 1, dataBase.getRecordCount());
+    }
+
+    @Test
+    void answersEveryRecordOfAnOrderedFile() throws IOException {
+        Path file = write(false);
+        LiDarDataBase dataBase = LiDarDataBase.open(file.toString(), CloudPointStorage.Kind.HEAP_DOUBLE, true);
+        for (int time = 1; time <= TIMES; time++) {
+            StampedCloudPoints points = dataBase.getCloudPoints("Wall", time);
+            assertNotNull(points, "time " + time);
+            assertEquals(time, points.getX(0));
+        }
+        assertEquals(TIMES, dataBase.getConsumedCount());
+    }
+
+    // One record per time in order, and with lateRecord one more for time 1 at the end
+    private Path write(boolean lateRecord) throws IOException {
+        Path file = directory.resolve("lidar_data.json");
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write('[');
+            for (int time = 1; time <= TIMES; time++) {
+                out.write((time == 1 ? "" : ",") + "{\"time\": " + time + ", \"id\": \"Wall\", \"cloudPoints\": [["
+                        + time + ", 1, 0.1]]}");
+            }
+            if (lateRecord) {
+                out.write(",{\"time\": 1, \"id\": \"Late\", \"cloudPoints\": [[7, 1, 0.1]]}");
+            }
+            out.write(']');
+        }
+        return file;
+    }
+}